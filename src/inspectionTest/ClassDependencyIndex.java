@@ -0,0 +1,108 @@
+package inspectionTest;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Dependencies between compiled classes, read from constant pools of class files.
+// Nested classes are merged into their top-level classes because they come from the same source file.
+public class ClassDependencyIndex {
+    private static final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([\\w/$]+)[;<]");
+
+    private final Map<String, Set<String>> myDependents = new HashMap<>();
+    private final Set<String> myTestClasses = new HashSet<>();
+    private int myClassFilesCount;
+
+    public void addDirectory(String path, boolean isTest) throws IOException {
+        Path root = Paths.get(path);
+        if (!Files.isDirectory(root)) return;
+
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (file.getFileName().toString().endsWith(".class")) {
+                    addClassFile(file, isTest);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void addClassFile(Path file, boolean isTest) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != 0xCAFEBABE) return;
+            in.readUnsignedShort();
+            in.readUnsignedShort();
+
+            int count = in.readUnsignedShort();
+            String[] strings = new String[count];
+            int[] classNameIndices = new int[count];
+            for (int i = 1; i < count; i++) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1: strings[i] = in.readUTF(); break;
+                    case 7: classNameIndices[i] = in.readUnsignedShort(); break;
+                    case 5: case 6: in.skipBytes(8); i++; break;
+                    case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18: in.skipBytes(4); break;
+                    case 15: in.skipBytes(3); break;
+                    case 8: case 16: case 19: case 20: in.skipBytes(2); break;
+                    default: throw new IOException("Unknown constant pool tag " + tag + " in " + file);
+                }
+            }
+            in.readUnsignedShort();
+            String className = topLevelName(strings[classNameIndices[in.readUnsignedShort()]]);
+
+            Set<String> dependencies = new HashSet<>();
+            for (int i = 1; i < count; i++) {
+                if (classNameIndices[i] != 0) {
+                    String name = strings[classNameIndices[i]];
+                    // array classes are referenced by descriptors
+                    if (!name.startsWith("[")) dependencies.add(topLevelName(name));
+                }
+                if (strings[i] != null && strings[i].indexOf(';') >= 0) {
+                    Matcher matcher = DESCRIPTOR_CLASS.matcher(strings[i]);
+                    while (matcher.find()) {
+                        dependencies.add(topLevelName(matcher.group(1)));
+                    }
+                }
+            }
+            for (String dependency : dependencies) {
+                myDependents.computeIfAbsent(dependency, name -> new HashSet<>()).add(className);
+            }
+            if (isTest) myTestClasses.add(className);
+            myClassFilesCount++;
+        }
+    }
+
+    // the given classes and all classes which depend on them directly or transitively
+    public Set<String> findDependents(Collection<String> classNames) {
+        Set<String> result = new HashSet<>(classNames);
+        Deque<String> queue = new ArrayDeque<>(classNames);
+        while (!queue.isEmpty()) {
+            for (String dependent : myDependents.getOrDefault(queue.poll(), Collections.emptySet())) {
+                if (result.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    public Set<String> getTestClasses() {
+        return myTestClasses;
+    }
+
+    public int getClassFilesCount() {
+        return myClassFilesCount;
+    }
+
+    private static String topLevelName(String internalName) {
+        String name = internalName.replace('/', '.');
+        int nested = name.indexOf('$');
+        return nested > 0 ? name.substring(0, nested) : name;
+    }
+}
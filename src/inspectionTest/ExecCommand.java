@@ -1,171 +1,212 @@
 package inspectionTest;
 import java.io.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.concurrent.Semaphore;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
+// Runs an external process. Output lines are passed to listeners as soon as they are read
+// and only the last lines of each stream are kept, so long builds don't fill the heap.
 public class ExecCommand {
-    private Semaphore outputSem;
-    private String output;
-    private Semaphore errorSem;
-    private String error;
+    private static final int DEFAULT_TAIL_LINES = 200;
+    // time given to a process to exit after it was asked to stop
+    private static final long DESTROY_TIMEOUT_MS = 10000;
+    private static final ExecutorService ourReaders = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ExecCommand output reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String[] command;
+    private final String path;
+    private Consumer<String> outputListener = System.out::println;
+    private Consumer<String> errorListener = System.err::println;
+    private long timeoutMillis;
+    private int tailLines = DEFAULT_TAIL_LINES;
+    private final Deque<String> outputTail = new ArrayDeque<>();
+    private final Deque<String> errorTail = new ArrayDeque<>();
+    private Future<?> outputReader;
+    private Future<?> errorReader;
     private Process p;
-    private String path;
+    private volatile boolean cancelled;
+    private boolean timedOut;
+    private int exitCode = -1;
 
-    private class InputWriter extends Thread {
-        private String input;
+    public ExecCommand(String command, String path) {
+        this.command = makeArray(command);
+        this.path = path;
+    }
 
-        public InputWriter(String input) {
-            this.input = input;
-        }
+    // null to ignore output
+    public ExecCommand setOutputListener(Consumer<String> outputListener) {
+        this.outputListener = outputListener;
+        return this;
+    }
 
-        public void run() {
-            PrintWriter pw = new PrintWriter(p.getOutputStream());
-            pw.println(input);
-            pw.flush();
-        }
+    public ExecCommand setErrorListener(Consumer<String> errorListener) {
+        this.errorListener = errorListener;
+        return this;
     }
 
-    private class OutputReader extends Thread {
-        public OutputReader() {
-            try {
-                outputSem = new Semaphore(1);
-                outputSem.acquire();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+    // the process is killed if it runs longer, 0 - no timeout
+    public ExecCommand setTimeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    public ExecCommand setTailLines(int tailLines) {
+        this.tailLines = tailLines;
+        return this;
+    }
+
+    // starts the process without waiting for it; a command cancelled before it was started is stopped at once
+    public synchronized ExecCommand start() throws IOException {
+        p = new ProcessBuilder(command).directory(new File(path)).start();
+        if (cancelled) {
+            p.destroy();
         }
+        // the process doesn't read anything
+        p.getOutputStream().close();
+        outputReader = ourReaders.submit(() -> read(p.getInputStream(), outputTail, outputListener));
+        errorReader = ourReaders.submit(() -> read(p.getErrorStream(), errorTail, errorListener));
+        return this;
+    }
 
-        public void run() {
-            try {
-                StringBuffer readBuffer = new StringBuffer();
-                BufferedReader isr = new BufferedReader(new InputStreamReader(p
-                        .getInputStream()));
-                String buff = new String();
-                while ((buff = isr.readLine()) != null) {
-                    readBuffer.append(buff);
-                    System.out.println(buff);
+    // waits until the process exits or is killed by timeout, returns its exit code
+    public int waitFor() throws InterruptedException {
+        try {
+            if (timeoutMillis > 0) {
+                if (!p.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    timedOut = true;
+                    System.err.println("Command timed out after " + timeoutMillis + " ms: " + String.join(" ", command));
+                    destroy();
                 }
-                output = readBuffer.toString();
-                outputSem.release();
-            } catch (IOException e) {
-                e.printStackTrace();
+            } else {
+                p.waitFor();
             }
+            exitCode = p.exitValue();
+            // the rest of the output can be still unread
+            waitForReader(outputReader);
+            waitForReader(errorReader);
+        } catch (InterruptedException e) {
+            destroy();
+            throw e;
+        } catch (Exception e) {
+            e.printStackTrace();
         }
+        return exitCode;
     }
 
-    private class ErrorReader extends Thread {
-        public ErrorReader() {
-            try {
-                errorSem = new Semaphore(1);
-                errorSem.acquire();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+    public int run() throws IOException, InterruptedException {
+        start();
+        return waitFor();
+    }
+
+    // a child of the process (e.g. a forked surefire JVM) can keep the stream open after the process exited
+    private void waitForReader(Future<?> reader) throws Exception {
+        try {
+            reader.get(DESTROY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            System.err.println("Output of the command is still open after it exited, the rest is not read: " + String.join(" ", command));
+            reader.cancel(true);
         }
+    }
 
-        public void run() {
-            try {
-                StringBuffer readBuffer = new StringBuffer();
-                BufferedReader isr = new BufferedReader(new InputStreamReader(p
-                        .getErrorStream()));
-                String buff = new String();
-                while ((buff = isr.readLine()) != null) {
-                    readBuffer.append(buff);
-                }
-                error = readBuffer.toString();
-                errorSem.release();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            if (error.length() > 0)
-                System.out.println(error);
+    // can be called from any thread, also before start(); waitFor() returns after the process is stopped
+    public synchronized void cancel() {
+        cancelled = true;
+        if (p != null) {
+            p.destroy();
         }
     }
 
-//    public ExecCommand(String command, String input) {
-//        try {
-//            p = Runtime.getRuntime().exec(makeArray(command));
-//            new InputWriter(input).start();
-//            new OutputReader().start();
-//            new ErrorReader().start();
-//            p.waitFor();
-//        } catch (IOException e) {
-//            e.printStackTrace();
-//        } catch (InterruptedException e) {
-//            e.printStackTrace();
-//        }
-//    }
+    private void destroy() throws InterruptedException {
+        p.destroy();
+        if (!p.waitFor(DESTROY_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            p.destroyForcibly().waitFor();
+        }
+    }
 
-    public ExecCommand(String command, String path) {
-        this.path = path;
-        try {
-            p = Runtime.getRuntime().exec(makeArray(command), null, new File(path));
-            new OutputReader().start();
-            new ErrorReader().start();
-            p.waitFor();
+    private void read(InputStream stream, Deque<String> tail, Consumer<String> listener) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                synchronized (tail) {
+                    if (tail.size() == tailLines) tail.poll();
+                    tail.add(line);
+                }
+                if (listener != null) listener.accept(line);
+            }
         } catch (IOException e) {
-            e.printStackTrace();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            // the stream is closed when the process is killed
+            if (!cancelled && !timedOut) e.printStackTrace();
         }
     }
 
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // last lines of the standard output
     public String getOutput() {
-        try {
-            outputSem.acquire();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-        String value = output;
-        outputSem.release();
-        return value;
+        return join(outputTail);
     }
 
+    // last lines of the error output
     public String getError() {
-        try {
-            errorSem.acquire();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        return join(errorTail);
+    }
+
+    private static String join(Deque<String> tail) {
+        synchronized (tail) {
+            return String.join("\n", tail);
         }
-        String value = error;
-        errorSem.release();
-        return value;
     }
 
-    private String[] makeArray(String command) {
-        ArrayList<String> commandArray = new ArrayList<String>();
-        String buff = "";
+    private static String[] makeArray(String command) {
+        List<String> commandArray = new ArrayList<>();
+        StringBuilder buff = new StringBuilder();
         boolean lookForEnd = false;
         for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
             if (lookForEnd) {
-                if (command.charAt(i) == '\"') {
+                if (c == '\"') {
                     if (buff.length() > 0)
-                        commandArray.add(buff);
-                    buff = "";
+                        commandArray.add(buff.toString());
+                    buff.setLength(0);
                     lookForEnd = false;
                 } else {
-                    buff += command.charAt(i);
+                    buff.append(c);
                 }
             } else {
-                if (command.charAt(i) == '\"') {
+                if (c == '\"') {
                     lookForEnd = true;
-                } else if (command.charAt(i) == ' ') {
+                } else if (c == ' ') {
                     if (buff.length() > 0)
-                        commandArray.add(buff);
-                    buff = "";
+                        commandArray.add(buff.toString());
+                    buff.setLength(0);
                 } else {
-                    buff += command.charAt(i);
+                    buff.append(c);
                 }
             }
         }
         if (buff.length() > 0)
-            commandArray.add(buff);
-
-        String[] array = new String[commandArray.size()];
-        for (int i = 0; i < commandArray.size(); i++) {
-            array[i] = commandArray.get(i);
-        }
+            commandArray.add(buff.toString());
 
-        return array;
+        return commandArray.toArray(new String[commandArray.size()]);
     }
-}
\ No newline at end of file
+}
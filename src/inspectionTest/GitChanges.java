@@ -0,0 +1,67 @@
+package inspectionTest;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Files of a project changed in its git repository since a revision: changed by later commits, modified in the
+// working tree or not tracked yet. Deleted files are not included.
+public class GitChanges {
+    private GitChanges() {
+    }
+
+    // paths relative to the project directory with / as a separator, null if git cannot tell
+    @Nullable
+    public static Set<String> findChangedFiles(String projectPath, String revision) {
+        Path project;
+        try {
+            // git reports the repository root with symbolic links resolved
+            project = Paths.get(projectPath).toRealPath();
+        } catch (IOException e) {
+            project = Paths.get(projectPath).toAbsolutePath().normalize();
+        }
+        List<String> root = git("git rev-parse --show-toplevel", projectPath);
+        if (root == null || root.isEmpty()) return null;
+        Path repository = Paths.get(root.get(0)).toAbsolutePath().normalize();
+
+        List<String> changed = git("git -c core.quotePath=false diff --name-only --diff-filter=d " + revision + " --", repository.toString());
+        List<String> untracked = git("git -c core.quotePath=false ls-files --others --exclude-standard", repository.toString());
+        if (changed == null || untracked == null) return null;
+        changed.addAll(untracked);
+
+        Set<String> files = new TreeSet<>();
+        for (String name : changed) {
+            Path file = repository.resolve(name).normalize();
+            // the repository can contain more than the project
+            if (file.startsWith(project)) {
+                files.add(project.relativize(file).toString().replace('\\', '/'));
+            }
+        }
+        return files;
+    }
+
+    @Nullable
+    private static List<String> git(String command, String path) {
+        List<String> output = new ArrayList<>();
+        try {
+            int exitCode = new ExecCommand(command, path).setOutputListener(output::add).run();
+            if (exitCode != 0) {
+                System.err.println(command + " failed with exit code " + exitCode);
+                return null;
+            }
+            return output;
+        } catch (IOException e) {
+            System.err.println("Cannot run git: " + e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package inspectionTest;
+
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.codeInspection.*;
+import com.intellij.codeInspection.ex.GlobalInspectionContextImpl;
+import com.intellij.codeInspection.ex.GlobalInspectionToolWrapper;
+import com.intellij.codeInspection.ex.InspectionToolWrapper;
+import com.intellij.codeInspection.ex.Tools;
+import com.intellij.codeInspection.reference.RefEntity;
+import com.intellij.codeInspection.reference.RefManagerImpl;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+// Runs global inspections once over the scope of the inspected directories, like the IDE does for Analyze | Inspect Code.
+// The reference graph is built once and shared by all tools which need it. Simple global tools only check
+// one file at a time and are run per file together with local tools.
+public class GlobalInspectionPass {
+    private final Project myProject;
+    private final GlobalInspectionContextImpl myContext;
+    private Predicate<VirtualFile> myFileFilter = file -> true;
+    private final Map<String, Throwable> myFailures = new LinkedHashMap<>();
+    private long myGraphTime;
+    private long myToolsTime;
+    private int myFilesCount;
+    private int myToolsCount;
+    private int myProblemsCount;
+
+    public GlobalInspectionPass(Project project, GlobalInspectionContextImpl context) {
+        myProject = project;
+        myContext = context;
+    }
+
+    // only files accepted by the filter are in the scope
+    public void setFileFilter(Predicate<VirtualFile> fileFilter) {
+        myFileFilter = fileFilter;
+    }
+
+    public static boolean isGlobal(Tools tool) {
+        InspectionToolWrapper wrapper = tool.getTool();
+        return wrapper instanceof GlobalInspectionToolWrapper &&
+                !(((GlobalInspectionToolWrapper) wrapper).getTool() instanceof GlobalSimpleInspectionTool);
+    }
+
+    // must be called in a read action
+    public List<ProblemDescriptor> run(List<Tools> tools, List<VirtualFile> directories, @Nullable InspectionProfiler profiler) {
+        List<VirtualFile> files = new ArrayList<>();
+        for (VirtualFile directory : directories) {
+            VfsUtilCore.iterateChildrenRecursively(directory, null, file -> {
+                if (!file.isDirectory() && myFileFilter.test(file)) files.add(file);
+                return true;
+            });
+        }
+        myFilesCount = files.size();
+        myToolsCount = tools.size();
+
+        AnalysisScope scope = new AnalysisScope(myProject, files);
+        myContext.setCurrentScope(scope);
+        InspectionManager manager = InspectionManager.getInstance(myProject);
+        GlobalJavaInspectionContext javaContext = myContext.getExtension(GlobalJavaInspectionContext.CONTEXT);
+        if (javaContext != null) {
+            javaContext.performPreRunActivities(tools, Collections.emptyList(), myContext);
+        }
+
+        Map<Tools, ProblemCollector> collectors = new LinkedHashMap<>();
+        List<InspectionToolWrapper> needRepeatSearchRequest = new ArrayList<>();
+        Map<Tools, Long> toolNanos = new HashMap<>();
+        Set<Tools> failedTools = new HashSet<>();
+        RefManagerImpl refManager = (RefManagerImpl) myContext.getRefManager();
+        refManager.inspectionReadActionStarted();
+        try {
+            boolean graphNeeded = false;
+            for (Tools tool : tools) {
+                graphNeeded |= ((GlobalInspectionToolWrapper) tool.getTool()).getTool().isGraphNeeded();
+            }
+            if (graphNeeded) {
+                long start = System.currentTimeMillis();
+                refManager.findAllDeclarations();
+                myGraphTime = System.currentTimeMillis() - start;
+            }
+
+            long start = System.currentTimeMillis();
+            for (Tools tool : tools) {
+                GlobalInspectionToolWrapper wrapper = (GlobalInspectionToolWrapper) tool.getTool();
+                ProblemCollector collector = new ProblemCollector();
+                collectors.put(tool, collector);
+                long toolStart = System.nanoTime();
+                boolean failed = false;
+                try {
+                    wrapper.initialize(myContext);
+                    wrapper.getTool().runInspection(scope, manager, myContext, collector);
+                    // usages from outside of the scope, e.g. for unused declarations
+                    if (wrapper.getTool().queryExternalUsagesRequests(manager, myContext, collector)) {
+                        needRepeatSearchRequest.add(wrapper);
+                    }
+                } catch (ProcessCanceledException e) {
+                    throw e;
+                } catch (Throwable e) {
+                    failed = true;
+                    myFailures.put(tool.getShortName(), e);
+                }
+                toolNanos.put(tool, System.nanoTime() - toolStart);
+                if (failed) failedTools.add(tool);
+            }
+            if (javaContext != null && !needRepeatSearchRequest.isEmpty()) {
+                javaContext.performPostRunActivities(needRepeatSearchRequest, myContext);
+            }
+            myToolsTime = System.currentTimeMillis() - start;
+        } finally {
+            refManager.inspectionReadActionFinished();
+        }
+
+        // elements could be ignored by external usage searches, so problems are collected only now
+        List<ProblemDescriptor> problems = new ArrayList<>();
+        for (Map.Entry<Tools, ProblemCollector> entry : collectors.entrySet()) {
+            List<ProblemDescriptor> toolProblems = entry.getValue().getProblems();
+            Tools tool = entry.getKey();
+            if (profiler != null) {
+                profiler.record(tool.getShortName(), "(global)", toolNanos.get(tool), toolProblems.size(), failedTools.contains(tool));
+            }
+            problems.addAll(toolProblems);
+        }
+        myProblemsCount = problems.size();
+
+        return problems;
+    }
+
+    // inspections which failed and their exceptions
+    public Map<String, Throwable> getFailures() {
+        return myFailures;
+    }
+
+    public String getStatistics() {
+        return "Global inspections: " + myToolsCount + " run once over " + myFilesCount + " files in " + myToolsTime +
+                " ms, reference graph built in " + myGraphTime + " ms, " + myProblemsCount + " problems";
+    }
+
+    private static class ProblemCollector implements ProblemDescriptionsProcessor {
+        private final Map<RefEntity, List<CommonProblemDescriptor>> myProblems = new LinkedHashMap<>();
+        private final List<CommonProblemDescriptor> myUnboundProblems = new ArrayList<>();
+
+        @Nullable
+        @Override
+        public CommonProblemDescriptor[] getDescriptions(RefEntity refEntity) {
+            List<CommonProblemDescriptor> problems = myProblems.get(refEntity);
+            return problems == null ? null : problems.toArray(new CommonProblemDescriptor[problems.size()]);
+        }
+
+        @Override
+        public void ignoreElement(RefEntity refEntity) {
+            myProblems.remove(refEntity);
+        }
+
+        @Override
+        public void resolveProblem(CommonProblemDescriptor descriptor) {
+            myUnboundProblems.remove(descriptor);
+            for (List<CommonProblemDescriptor> problems : myProblems.values()) {
+                problems.remove(descriptor);
+            }
+        }
+
+        @Override
+        public void addProblemElement(@Nullable RefEntity refEntity, CommonProblemDescriptor... descriptors) {
+            if (refEntity == null) {
+                myUnboundProblems.addAll(Arrays.asList(descriptors));
+            } else {
+                myProblems.computeIfAbsent(refEntity, entity -> new ArrayList<>()).addAll(Arrays.asList(descriptors));
+            }
+        }
+
+        @Override
+        public RefEntity getElement(CommonProblemDescriptor descriptor) {
+            for (Map.Entry<RefEntity, List<CommonProblemDescriptor>> entry : myProblems.entrySet()) {
+                if (entry.getValue().contains(descriptor)) return entry.getKey();
+            }
+            return null;
+        }
+
+        // only problems anchored to PSI elements can be fixed
+        private List<ProblemDescriptor> getProblems() {
+            List<ProblemDescriptor> problems = new ArrayList<>();
+            List<CommonProblemDescriptor> all = new ArrayList<>(myUnboundProblems);
+            for (List<CommonProblemDescriptor> entityProblems : myProblems.values()) {
+                all.addAll(entityProblems);
+            }
+            for (CommonProblemDescriptor problem : all) {
+                if (problem instanceof ProblemDescriptor) {
+                    problems.add((ProblemDescriptor) problem);
+                }
+            }
+            return problems;
+        }
+    }
+}
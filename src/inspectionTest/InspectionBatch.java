@@ -0,0 +1,100 @@
+package inspectionTest;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ex.ApplicationManagerEx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs jobs listed in a manifest one after another in the same IDE, so that it is started once for all of them.
+// Every line of the manifest has the arguments of test-inspect: <project> <profile> [<options>], arguments with spaces
+// are quoted, empty lines and lines starting with # are skipped. Relative paths are resolved against the manifest directory.
+public class InspectionBatch {
+    private final File myManifest;
+
+    public InspectionBatch(String manifestPath) {
+        myManifest = new File(manifestPath).getAbsoluteFile();
+    }
+
+    public void start() {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(myManifest.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Cannot read jobs from " + myManifest + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        // jobs are run on the EDT, so they are waited for in another thread
+        new Thread(() -> run(lines), "InspectionBatch").start();
+    }
+
+    private void run(List<String> lines) {
+        List<String[]> results = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] args = InspectionClient.resolvePaths(split(line), myManifest.getParentFile());
+            String name = args.length > 1 ? args[0] + " " + args[1] : args[0];
+            System.out.println("Job " + (results.size() + 1) + ": " + line);
+
+            InspectionJob job;
+            try {
+                job = new InspectionJob(args, null);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid job: " + e.getMessage());
+                results.add(new String[]{name, "invalid arguments", "0"});
+                continue;
+            }
+            try {
+                job.start();
+                String verdict = job.waitFor(InspectionJob.DEFAULT_TIMEOUT);
+                results.add(new String[]{name, verdict, String.valueOf(job.getTime())});
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+
+        System.out.println(results.size() + " jobs finished in " + (System.currentTimeMillis() - start) + " ms");
+        System.out.println(String.format("%-80s %-17s %10s", "Job", "Verdict", "time, ms"));
+        for (String[] result : results) {
+            String name = result[0].length() <= 80 ? result[0] : "..." + result[0].substring(result[0].length() - 77);
+            System.out.println(String.format("%-80s %-17s %10s", name, result[1], result[2]));
+        }
+        ApplicationManager.getApplication().invokeLater(() -> ApplicationManagerEx.getApplicationEx().exit(true, true), ModalityState.NON_MODAL);
+    }
+
+    // splits by whitespace, except inside double quotes
+    private static String[] split(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder arg = new StringBuilder();
+        boolean quoted = false;
+        boolean started = false;
+        for (char c : line.toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+                started = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (started) {
+                    args.add(arg.toString());
+                    arg.setLength(0);
+                    started = false;
+                }
+            } else {
+                arg.append(c);
+                started = true;
+            }
+        }
+        if (started) {
+            args.add(arg.toString());
+        }
+        return args.toArray(new String[args.size()]);
+    }
+}
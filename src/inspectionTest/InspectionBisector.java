@@ -0,0 +1,81 @@
+package inspectionTest;
+
+import com.intellij.codeInspection.ex.Tools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// Finds inspections which break the project by splitting a breaking group of tools in halves
+// and verifying each half separately, which takes about k * log(n) verification runs for k invalid inspections.
+// Verification may finish asynchronously (e.g. after compilation), so every step is continued from a callback.
+public class InspectionBisector {
+    private final BiConsumer<List<Tools>, Consumer<Boolean>> myVerifier;
+    private final Runnable myOnFinished;
+    private final Deque<List<Tools>> myBrokenGroups = new ArrayDeque<>();
+    private final List<Tools> myInvalidTools = new ArrayList<>();
+    private final List<List<Tools>> myInteractingGroups = new ArrayList<>();
+    private int myRunsCount;
+
+    // verifier applies fixes of the given tools and reports whether the project is broken after that
+    public InspectionBisector(BiConsumer<List<Tools>, Consumer<Boolean>> verifier, Runnable onFinished) {
+        myVerifier = verifier;
+        myOnFinished = onFinished;
+    }
+
+    // tools are known to break the project together
+    public void start(List<Tools> tools) {
+        System.out.println("Bisecting " + tools.size() + " inspections...");
+        myBrokenGroups.push(new ArrayList<>(tools));
+        next();
+    }
+
+    private void next() {
+        List<Tools> group = myBrokenGroups.poll();
+        if (group == null) {
+            printResult();
+            myOnFinished.run();
+        } else if (group.size() == 1) {
+            System.out.println("Invalid inspection: " + group.get(0).getShortName());
+            myInvalidTools.add(group.get(0));
+            next();
+        } else {
+            List<Tools> left = group.subList(0, group.size() / 2);
+            List<Tools> right = group.subList(group.size() / 2, group.size());
+            verify(left, leftBroken -> verify(right, rightBroken -> {
+                if (leftBroken) myBrokenGroups.push(left);
+                if (rightBroken) myBrokenGroups.push(right);
+                // the project is broken only by fixes of inspections from both halves together
+                if (!leftBroken && !rightBroken) myInteractingGroups.add(group);
+                next();
+            }));
+        }
+    }
+
+    private void verify(List<Tools> group, Consumer<Boolean> onResult) {
+        myRunsCount++;
+        System.out.println("Verifying " + group.size() + " inspections (run " + myRunsCount + ")");
+        myVerifier.accept(group, onResult);
+    }
+
+    private void printResult() {
+        System.out.println("Bisection finished after " + myRunsCount + " verification runs.");
+        for (Tools tool : myInvalidTools) {
+            System.out.println("Invalid inspection: " + tool.getShortName());
+        }
+        for (List<Tools> group : myInteractingGroups) {
+            List<String> names = new ArrayList<>();
+            for (Tools tool : group) {
+                names.add(tool.getShortName());
+            }
+            System.out.println("Inspections break the project only together: " + String.join(", ", names));
+        }
+    }
+
+    public List<Tools> getInvalidTools() {
+        return myInvalidTools;
+    }
+}
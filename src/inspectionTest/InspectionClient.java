@@ -0,0 +1,103 @@
+package inspectionTest;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Sends a job to a running InspectionServer and prints its output, needs nothing but the JRE:
+// java -cp InspectionTest.jar inspectionTest.InspectionClient <port> <project> <profile> [<options>]
+// Relative paths are resolved against the working directory of the client.
+// Exit code is 0 if inspections are correct, 2 if they broke the project and 1 if the job failed, timed out or was rejected.
+public class InspectionClient {
+    private static final Set<String> PATH_OPTIONS = new HashSet<>(Arrays.asList("-d", "-profilePath", "-cache", "-costs", "-stats"));
+    // values of these options are names or paths
+    private static final Set<String> PROFILE_OPTIONS = Collections.singleton("-baselineProfile");
+    private static final Set<String> PATH_LIST_OPTIONS = new HashSet<>(Arrays.asList("-t", "-m"));
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Expected parameters: <port> <project_file_path> <inspection_profile> [<options>]");
+            System.exit(1);
+        }
+
+        StringBuilder request = new StringBuilder();
+        // the server has another working directory
+        for (String arg : resolvePaths(Arrays.copyOfRange(args, 1, args.length), new File(System.getProperty("user.dir")))) {
+            if (request.length() > 0) request.append('\t');
+            request.append(arg);
+        }
+
+        String verdict = null;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+            OutputStream output = socket.getOutputStream();
+            output.write((request + "\n").getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(InspectionServer.VERDICT)) {
+                    verdict = line.substring(InspectionServer.VERDICT.length());
+                } else if (line.startsWith(InspectionServer.REJECTED)) {
+                    System.err.println("Job rejected: " + line.substring(InspectionServer.REJECTED.length()));
+                } else {
+                    System.out.println(line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot connect to the server: " + e.getMessage());
+        }
+
+        if (verdict == null) {
+            System.exit(1);
+        }
+        System.out.println("Verdict: " + verdict);
+        if (InspectionTestApplication.VERDICT_CORRECT.equals(verdict)) {
+            System.exit(0);
+        }
+        System.exit(InspectionTestApplication.VERDICT_INVALID.equals(verdict) || InspectionTestApplication.VERDICT_NOT_COMPILED.equals(verdict) ? 2 : 1);
+    }
+
+    // arguments of test-inspect (<project> <profile> [<options>]) with relative paths resolved against the given directory
+    public static String[] resolvePaths(String[] args, File directory) {
+        String[] resolved = args.clone();
+        for (int i = 0; i < resolved.length; i++) {
+            String arg = resolved[i];
+            if (i == 0) {
+                resolved[i] = resolve(arg, directory);
+            } else if (i == 1) {
+                resolved[i] = resolveIfExists(arg, directory);
+            } else if (i + 1 < resolved.length && PATH_OPTIONS.contains(arg)) {
+                resolved[i + 1] = resolve(resolved[i + 1], directory);
+                i++;
+            } else if (i + 1 < resolved.length && PROFILE_OPTIONS.contains(arg)) {
+                resolved[i + 1] = resolveIfExists(resolved[i + 1], directory);
+                i++;
+            } else if (i + 1 < resolved.length && "-mavenExecutable".equals(arg)) {
+                // a command found in PATH is left as it is
+                if (resolved[i + 1].contains("/") || resolved[i + 1].contains(File.separator)) {
+                    resolved[i + 1] = resolve(resolved[i + 1], directory);
+                }
+                i++;
+            } else if (PATH_LIST_OPTIONS.contains(arg)) {
+                while (i + 1 < resolved.length && !resolved[i + 1].startsWith("-")) {
+                    resolved[i + 1] = resolve(resolved[i + 1], directory);
+                    i++;
+                }
+            }
+        }
+        return resolved;
+    }
+
+    private static String resolve(String path, File directory) {
+        return new File(path).isAbsolute() ? path : new File(directory, path).getAbsolutePath();
+    }
+
+    // a profile is given by a name or by a path
+    private static String resolveIfExists(String path, File directory) {
+        File file = new File(directory, path);
+        return !new File(path).isAbsolute() && file.exists() ? file.getAbsolutePath() : path;
+    }
+}
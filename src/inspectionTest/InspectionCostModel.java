@@ -0,0 +1,101 @@
+package inspectionTest;
+
+import java.io.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Average cost of every inspection measured in previous runs, persisted between runs.
+// The cost of an inspection grows with the size of a file, so time per character is stored as well.
+public class InspectionCostModel {
+    private static final int VERSION = 1;
+
+    private final File myFile;
+    private final Map<String, Cost> myCosts = new ConcurrentHashMap<>();
+
+    public InspectionCostModel(String path) {
+        myFile = new File(path);
+    }
+
+    public void load() {
+        if (!myFile.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile)))) {
+            if (in.readInt() != VERSION) return;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Cost cost = new Cost();
+                String toolName = in.readUTF();
+                cost.myInvocations = in.readLong();
+                cost.myNanos = in.readLong();
+                cost.myCharacters = in.readLong();
+                myCosts.put(toolName, cost);
+            }
+        } catch (IOException e) {
+            myCosts.clear();
+            System.err.println("Failed to read inspection costs " + myFile + ": " + e.getMessage());
+        }
+    }
+
+    public void save() {
+        File parent = myFile.getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myFile)))) {
+            out.writeInt(VERSION);
+            out.writeInt(myCosts.size());
+            for (Map.Entry<String, Cost> entry : myCosts.entrySet()) {
+                Cost cost = entry.getValue();
+                synchronized (cost) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(cost.myInvocations);
+                    out.writeLong(cost.myNanos);
+                    out.writeLong(cost.myCharacters);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write inspection costs " + myFile + ": " + e.getMessage());
+        }
+    }
+
+    public void record(String toolName, long nanos, long characters) {
+        Cost cost = myCosts.computeIfAbsent(toolName, name -> new Cost());
+        synchronized (cost) {
+            cost.myInvocations++;
+            cost.myNanos += nanos;
+            cost.myCharacters += characters;
+        }
+    }
+
+    public boolean isKnown(String toolName) {
+        return myCosts.containsKey(toolName);
+    }
+
+    // -1 if the inspection was never measured
+    public long getAverageNanos(String toolName) {
+        Cost cost = myCosts.get(toolName);
+        if (cost == null) return -1;
+        synchronized (cost) {
+            return cost.myNanos / Math.max(1, cost.myInvocations);
+        }
+    }
+
+    // -1 if the inspection was never measured
+    public long estimateNanos(String toolName, long characters) {
+        Cost cost = myCosts.get(toolName);
+        if (cost == null) return -1;
+        synchronized (cost) {
+            if (cost.myCharacters == 0) return cost.myNanos / Math.max(1, cost.myInvocations);
+            return (long) ((double) cost.myNanos / cost.myCharacters * characters);
+        }
+    }
+
+    public int size() {
+        return myCosts.size();
+    }
+
+    private static class Cost {
+        private long myInvocations;
+        private long myNanos;
+        private long myCharacters;
+    }
+}
@@ -0,0 +1,149 @@
+package inspectionTest;
+
+import com.intellij.codeInspection.InspectionToolCmdlineOptionHelpProvider;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// One run of the application in an IDE which keeps running after it: the IDE is not exited when the run is finished,
+// and the output of the run is copied to the given stream. Runs use the EDT and System.out, so only one job is run at a time.
+public class InspectionJob {
+    public static final String VERDICT_TIMED_OUT = "timed out";
+    public static final long DEFAULT_TIMEOUT = TimeUnit.HOURS.toMillis(2);
+
+    private final String[] myArgs;
+    private final InspectionTestApplication myApplication;
+    @Nullable
+    private final OutputStream myOutput;
+    private final CountDownLatch myFinished = new CountDownLatch(1);
+    private PrintStream myStdout;
+    private PrintStream myStderr;
+    private volatile long myStart;
+    private volatile long myTime;
+    private volatile String myVerdict;
+
+    // args are <project> <profile> [<options>] of test-inspect
+    public InspectionJob(String[] args, @Nullable OutputStream output) throws IllegalArgumentException {
+        myArgs = args;
+        myOutput = output;
+        myApplication = InspectionTestMain.parseArguments(args);
+        myApplication.myErrorCodeRequired = false;
+        myApplication.myHelpProvider = new InspectionToolCmdlineOptionHelpProvider() {
+            @Override
+            public void printHelpAndExit() {
+                throw new IllegalArgumentException("Invalid arguments of the job");
+            }
+        };
+        myApplication.myOnFinished = this::finished;
+    }
+
+    public void start() {
+        myStart = System.currentTimeMillis();
+        ApplicationManager.getApplication().invokeLater(this::run, ModalityState.NON_MODAL);
+    }
+
+    // returns the verdict; a job which runs longer than timeoutMillis is cancelled, 0 - no timeout
+    public String waitFor(long timeoutMillis) throws InterruptedException {
+        if (timeoutMillis <= 0) {
+            myFinished.await();
+        } else if (!myFinished.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            System.err.println("Job timed out after " + timeoutMillis / 1000 + " s: " + getProjectPath());
+            // the rest of the job is skipped, but a step running on the EDT now can only be waited for
+            myApplication.cancel(VERDICT_TIMED_OUT);
+            finished(VERDICT_TIMED_OUT);
+        }
+        return myVerdict;
+    }
+
+    private void run() {
+        if (myOutput != null) {
+            myStdout = System.out;
+            myStderr = System.err;
+            System.setOut(new PrintStream(new TeeOutputStream(myStdout, myOutput), true));
+            System.setErr(new PrintStream(new TeeOutputStream(myStderr, myOutput), true));
+        }
+        try {
+            myApplication.startup();
+        } catch (Throwable e) {
+            System.err.println("Job failed: " + e.getMessage());
+            finished(InspectionTestApplication.VERDICT_FAILED);
+        }
+    }
+
+    private synchronized void finished(String verdict) {
+        if (myVerdict != null) return;
+        myTime = System.currentTimeMillis() - myStart;
+        if (myOutput != null) {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(myStdout);
+            System.setErr(myStderr);
+        }
+        myVerdict = verdict;
+        myFinished.countDown();
+    }
+
+    public String getProjectPath() {
+        return myArgs[0];
+    }
+
+    public String getProfile() {
+        return myArgs[1];
+    }
+
+    // milliseconds
+    public long getTime() {
+        return myTime;
+    }
+
+    // the console always gets the output, the client only until it is disconnected
+    private static class TeeOutputStream extends OutputStream {
+        private final OutputStream myConsole;
+        private final OutputStream myClient;
+        private boolean myClientFailed;
+
+        private TeeOutputStream(OutputStream console, OutputStream client) {
+            myConsole = console;
+            myClient = client;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            myConsole.write(b);
+            if (myClientFailed) return;
+            try {
+                myClient.write(b);
+            } catch (IOException e) {
+                myClientFailed = true;
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            myConsole.write(b, off, len);
+            if (myClientFailed) return;
+            try {
+                myClient.write(b, off, len);
+            } catch (IOException e) {
+                myClientFailed = true;
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            myConsole.flush();
+            if (myClientFailed) return;
+            try {
+                myClient.flush();
+            } catch (IOException e) {
+                myClientFailed = true;
+            }
+        }
+    }
+}
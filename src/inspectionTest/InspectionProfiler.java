@@ -0,0 +1,148 @@
+package inspectionTest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Time, invocations, problems and exceptions of every inspection and every file.
+// Files can be inspected by several threads at once, so the time is the sum of times spent in each thread.
+public class InspectionProfiler {
+    private static final int SUMMARY_ROWS = 20;
+
+    private final Map<String, Stats> myToolStats = new ConcurrentHashMap<>();
+    private final Map<String, Stats> myFileStats = new ConcurrentHashMap<>();
+
+    public void record(String toolName, String filePath, long nanos, int problemsCount, boolean failed) {
+        myToolStats.computeIfAbsent(toolName, Stats::new).add(nanos, problemsCount, failed);
+        myFileStats.computeIfAbsent(filePath, Stats::new).add(nanos, problemsCount, failed);
+    }
+
+    // inspection was not run because the cache knows it finds nothing in the file
+    public void recordCached(String toolName) {
+        myToolStats.computeIfAbsent(toolName, Stats::new).addCached();
+    }
+
+    public void printSummary() {
+        List<Stats> tools = sorted(myToolStats);
+        long totalNanos = 0;
+        for (Stats stats : tools) {
+            totalNanos += stats.myNanos;
+        }
+        System.out.println("Inspection time: " + totalNanos / 1000000 + " ms in " + tools.size() + " inspections and " + myFileStats.size() + " files");
+        printTable("Inspection", tools);
+        printTable("File", sorted(myFileStats));
+    }
+
+    private static void printTable(String title, List<Stats> rows) {
+        System.out.println(String.format("%-50s %10s %8s %8s %8s %8s", title, "time, ms", "calls", "cached", "problems", "errors"));
+        for (Stats stats : rows.subList(0, Math.min(SUMMARY_ROWS, rows.size()))) {
+            System.out.println(String.format("%-50s %10d %8d %8d %8d %8d", shorten(stats.myName), stats.myNanos / 1000000,
+                    stats.myInvocations, stats.myCached, stats.myProblems, stats.myExceptions));
+        }
+        if (rows.size() > SUMMARY_ROWS) {
+            System.out.println("... " + (rows.size() - SUMMARY_ROWS) + " more");
+        }
+    }
+
+    // CSV if the file name ends with .csv, JSON otherwise
+    public void writeReport(String path) {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8))) {
+            if (path.toLowerCase().endsWith(".csv")) {
+                writer.println("kind,name,timeMs,invocations,cached,problems,exceptions");
+                writeCsv(writer, "inspection", sorted(myToolStats));
+                writeCsv(writer, "file", sorted(myFileStats));
+            } else {
+                writer.println("{");
+                writeJson(writer, "inspections", sorted(myToolStats));
+                writer.println(",");
+                writeJson(writer, "files", sorted(myFileStats));
+                writer.println();
+                writer.println("}");
+            }
+            System.out.println("Inspection statistics written to " + path);
+        } catch (IOException e) {
+            System.err.println("Failed to write inspection statistics to " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeCsv(PrintWriter writer, String kind, List<Stats> rows) {
+        for (Stats stats : rows) {
+            String name = stats.myName.contains(",") || stats.myName.contains("\"") ? "\"" + stats.myName.replace("\"", "\"\"") + "\"" : stats.myName;
+            writer.println(kind + "," + name + "," + millis(stats) + "," + stats.myInvocations + "," + stats.myCached + "," +
+                    stats.myProblems + "," + stats.myExceptions);
+        }
+    }
+
+    private static void writeJson(PrintWriter writer, String key, List<Stats> rows) {
+        writer.println("  \"" + key + "\": [");
+        for (int i = 0; i < rows.size(); i++) {
+            Stats stats = rows.get(i);
+            writer.print("    {\"name\": \"" + escapeJson(stats.myName) + "\", \"timeMs\": " + millis(stats) +
+                    ", \"invocations\": " + stats.myInvocations + ", \"cached\": " + stats.myCached +
+                    ", \"problems\": " + stats.myProblems + ", \"exceptions\": " + stats.myExceptions + "}");
+            writer.println(i + 1 < rows.size() ? "," : "");
+        }
+        writer.print("  ]");
+    }
+
+    private static String millis(Stats stats) {
+        return String.format(Locale.ROOT, "%.3f", stats.myNanos / 1000000.0);
+    }
+
+    private static String escapeJson(String value) {
+        StringBuilder result = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static String shorten(String name) {
+        return name.length() <= 50 ? name : "..." + name.substring(name.length() - 47);
+    }
+
+    // the most expensive first
+    private static List<Stats> sorted(Map<String, Stats> stats) {
+        List<Stats> result = new ArrayList<>(stats.values());
+        result.sort(Comparator.comparingLong((Stats s) -> s.myNanos).reversed().thenComparing(s -> s.myName));
+        return result;
+    }
+
+    private static class Stats {
+        private final String myName;
+        private long myNanos;
+        private int myInvocations;
+        private int myCached;
+        private int myProblems;
+        private int myExceptions;
+
+        private Stats(String name) {
+            myName = name;
+        }
+
+        private synchronized void add(long nanos, int problemsCount, boolean failed) {
+            myNanos += nanos;
+            myInvocations++;
+            myProblems += problemsCount;
+            if (failed) myExceptions++;
+        }
+
+        private synchronized void addCached() {
+            myCached++;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package inspectionTest;
+
+import com.intellij.codeInspection.ex.Tools;
+import com.intellij.openapi.application.ApplicationInfo;
+import com.intellij.psi.PsiFile;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Persistent cache of (file content, tool, tool settings) combinations which produced no problems.
+// Problems themselves are anchored to PSI and cannot be stored, so tools which found problems are always rerun.
+public class InspectionResultCache {
+    private static final int VERSION = 1;
+
+    private final File myFile;
+    private final Map<String, Set<Long>> myCleanResults = new ConcurrentHashMap<>();
+    // only results for files seen in the current run are saved, so the cache doesn't grow forever
+    private final Map<String, Set<Long>> myCurrentResults = new ConcurrentHashMap<>();
+    private final Map<String, Long> myToolKeys = new ConcurrentHashMap<>();
+    private final AtomicInteger myHits = new AtomicInteger();
+    private final AtomicInteger myMisses = new AtomicInteger();
+
+    public InspectionResultCache(String path) {
+        myFile = new File(path);
+    }
+
+    public void load() {
+        if (!myFile.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile)))) {
+            if (in.readInt() != VERSION || !getBuild().equals(in.readUTF())) {
+                System.out.println("Inspection cache was created by another version and will be rebuilt");
+                return;
+            }
+            int filesCount = in.readInt();
+            for (int i = 0; i < filesCount; i++) {
+                String fileHash = in.readUTF();
+                int toolsCount = in.readInt();
+                Set<Long> toolKeys = ConcurrentHashMap.newKeySet(toolsCount);
+                for (int j = 0; j < toolsCount; j++) {
+                    toolKeys.add(in.readLong());
+                }
+                myCleanResults.put(fileHash, toolKeys);
+            }
+        } catch (IOException e) {
+            myCleanResults.clear();
+            System.err.println("Failed to read inspection cache " + myFile + ": " + e.getMessage());
+        }
+    }
+
+    public void save() {
+        File parent = myFile.getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myFile)))) {
+            out.writeInt(VERSION);
+            out.writeUTF(getBuild());
+            out.writeInt(myCurrentResults.size());
+            for (Map.Entry<String, Set<Long>> entry : myCurrentResults.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (long toolKey : entry.getValue()) {
+                    out.writeLong(toolKey);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write inspection cache " + myFile + ": " + e.getMessage());
+        }
+    }
+
+    public String hashContent(PsiFile file) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(file.getName().getBytes(StandardCharsets.UTF_8));
+            digest.update(file.getViewProvider().getContents().toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // true if the tool is known to find nothing in a file with such content
+    public boolean isClean(String fileHash, Tools tool) {
+        Set<Long> toolKeys = myCleanResults.get(fileHash);
+        long toolKey = getToolKey(tool);
+        if (toolKeys != null && toolKeys.contains(toolKey)) {
+            myHits.incrementAndGet();
+            getCurrentResults(fileHash).add(toolKey);
+            return true;
+        }
+        myMisses.incrementAndGet();
+        return false;
+    }
+
+    public void put(String fileHash, Tools tool, int problemsCount) {
+        if (problemsCount == 0) {
+            getCurrentResults(fileHash).add(getToolKey(tool));
+        }
+    }
+
+    public String getStatistics() {
+        int hits = myHits.get();
+        int total = hits + myMisses.get();
+        return "Inspection cache: " + hits + " hits, " + myMisses.get() + " misses (" +
+                (total == 0 ? 0 : hits * 100 / total) + "% of inspections skipped)";
+    }
+
+    private Set<Long> getCurrentResults(String fileHash) {
+        return myCurrentResults.computeIfAbsent(fileHash, hash -> ConcurrentHashMap.newKeySet());
+    }
+
+    private long getToolKey(Tools tool) {
+        return myToolKeys.computeIfAbsent(tool.getShortName(),
+                name -> ((long) name.hashCode() << 32) | (ToolSettings.hash(tool) & 0xFFFFFFFFL));
+    }
+
+    private static String getBuild() {
+        return ApplicationInfo.getInstance().getBuild().asString();
+    }
+}
@@ -0,0 +1,124 @@
+package inspectionTest;
+
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.codeInspection.ex.LocalInspectionToolWrapper;
+import com.intellij.codeInspection.ex.Tools;
+import com.intellij.psi.PsiFile;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
+// Splits inspection of files into work units and runs the most expensive units first, using costs of previous runs,
+// so that slow inspections don't run alone at the end. Every expensive inspection of a file is a unit of its own,
+// cheap local inspections of a file are run together in one pass over its PSI tree.
+public class InspectionScheduler {
+    // local inspections which take less on average are batched
+    private static final long CHEAP_TOOL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final InspectionCostModel myCosts;
+    private final int myThreadsCount;
+    private String myStatistics = "";
+
+    public InspectionScheduler(InspectionCostModel costs, int threadsCount) {
+        myCosts = costs;
+        myThreadsCount = threadsCount;
+    }
+
+    // inspector runs the given tools one by one, batchInspector runs local tools in a single pass over the file.
+    // Results are merged in the order of files, so the output does not depend on the scheduling
+    public List<ProblemDescriptor> inspect(List<PsiFile> files, List<Tools> tools,
+                                           BiFunction<PsiFile, List<Tools>, List<ProblemDescriptor>> inspector,
+                                           BiFunction<PsiFile, List<Tools>, List<ProblemDescriptor>> batchInspector) {
+        List<Tools> cheapLocalTools = new ArrayList<>();
+        List<Tools> expensiveTools = new ArrayList<>();
+        List<Tools> otherTools = new ArrayList<>();
+        for (Tools tool : tools) {
+            long averageNanos = myCosts.getAverageNanos(tool.getShortName());
+            if (averageNanos >= CHEAP_TOOL_NANOS) {
+                expensiveTools.add(tool);
+            } else if (averageNanos >= 0 && tool.getTool() instanceof LocalInspectionToolWrapper) {
+                cheapLocalTools.add(tool);
+            } else {
+                otherTools.add(tool);
+            }
+        }
+
+        List<WorkUnit> units = new ArrayList<>();
+        for (PsiFile file : files) {
+            long length = file.getVirtualFile() != null ? file.getVirtualFile().getLength() : 0;
+            if (!cheapLocalTools.isEmpty()) {
+                units.add(new WorkUnit(file, cheapLocalTools, true, estimate(cheapLocalTools, length)));
+            }
+            // cheap global and not yet measured inspections of a file are run one by one in the same unit
+            if (!otherTools.isEmpty()) {
+                units.add(new WorkUnit(file, otherTools, false, estimate(otherTools, length)));
+            }
+            for (Tools tool : expensiveTools) {
+                List<Tools> single = new ArrayList<>();
+                single.add(tool);
+                units.add(new WorkUnit(file, single, false, estimate(single, length)));
+            }
+        }
+
+        // longest processing time first, the pool takes units in the order of submission
+        List<WorkUnit> byCost = new ArrayList<>(units);
+        byCost.sort(Comparator.comparingLong((WorkUnit unit) -> unit.myEstimate).reversed());
+
+        ExecutorService executor = Executors.newFixedThreadPool(myThreadsCount);
+        long start = System.currentTimeMillis();
+        try {
+            for (WorkUnit unit : byCost) {
+                unit.myFuture = executor.submit(() -> ParallelInspector.inspectInReadAction(unit.myFile,
+                        file -> (unit.myBatched ? batchInspector : inspector).apply(file, unit.myTools)));
+            }
+            List<ProblemDescriptor> problems = new ArrayList<>();
+            for (WorkUnit unit : units) {
+                problems.addAll(unit.myFuture.get());
+            }
+            myStatistics = "Inspected " + files.size() + " files in " + (System.currentTimeMillis() - start) + " ms using " +
+                    myThreadsCount + " threads: " + units.size() + " work units, " + cheapLocalTools.size() +
+                    " cheap local inspections batched, " + expensiveTools.size() + " expensive inspections run separately";
+            return problems;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Inspection was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public String getStatistics() {
+        return myStatistics;
+    }
+
+    // inspections which were never measured are scheduled first, so their cost is known as early as possible
+    private long estimate(List<Tools> tools, long length) {
+        long nanos = 0;
+        for (Tools tool : tools) {
+            long toolNanos = myCosts.estimateNanos(tool.getShortName(), length);
+            if (toolNanos < 0) return Long.MAX_VALUE;
+            nanos += toolNanos;
+        }
+        return nanos;
+    }
+
+    private static class WorkUnit {
+        private final PsiFile myFile;
+        private final List<Tools> myTools;
+        private final boolean myBatched;
+        private final long myEstimate;
+        private Future<List<ProblemDescriptor>> myFuture;
+
+        private WorkUnit(PsiFile file, List<Tools> tools, boolean batched, long estimate) {
+            myFile = file;
+            myTools = tools;
+            myBatched = batched;
+            myEstimate = estimate;
+        }
+    }
+}
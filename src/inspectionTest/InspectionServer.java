@@ -0,0 +1,148 @@
+package inspectionTest;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Keeps the IDE running and inspects projects sent by InspectionClient, so that the IDE, plugins and test libraries
+// are loaded once for many runs. A connection is one job: a line with the arguments of test-inspect separated by tabs.
+// The output of the job is streamed back, the last line is the verdict. Jobs which don't fit into the queue are rejected.
+public class InspectionServer {
+    public static final int DEFAULT_QUEUE_SIZE = 8;
+    public static final String QUEUED = "QUEUED ";
+    public static final String REJECTED = "REJECTED ";
+    public static final String VERDICT = "VERDICT ";
+    // a client has to send its request in this time
+    private static final int REQUEST_TIMEOUT = 10000;
+
+    private final int myPort;
+    private final BlockingQueue<Request> myQueue;
+    private final long myJobTimeout;
+
+    // jobTimeout in milliseconds, 0 - no timeout
+    public InspectionServer(int port, int queueSize, long jobTimeout) {
+        myPort = port;
+        myQueue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        myJobTimeout = jobTimeout;
+    }
+
+    public void start() {
+        ServerSocket serverSocket;
+        try {
+            // jobs run arbitrary tests, so only local clients are accepted
+            serverSocket = new ServerSocket(myPort, 50, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            System.err.println("Cannot listen on port " + myPort + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println("Waiting for jobs on port " + serverSocket.getLocalPort() + ", queue size " + myQueue.remainingCapacity());
+
+        Thread acceptor = new Thread(() -> accept(serverSocket), "InspectionServer acceptor");
+        acceptor.start();
+        Thread worker = new Thread(this::work, "InspectionServer worker");
+        worker.start();
+    }
+
+    private void accept(ServerSocket serverSocket) {
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                System.err.println("Server stopped: " + e.getMessage());
+                return;
+            }
+            try {
+                socket.setSoTimeout(REQUEST_TIMEOUT);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+                String line = reader.readLine();
+                if (line == null) {
+                    socket.close();
+                    continue;
+                }
+
+                InspectionJob job;
+                try {
+                    job = new InspectionJob(line.split("\t"), output);
+                } catch (IllegalArgumentException e) {
+                    reply(socket, output, REJECTED + e.getMessage());
+                    continue;
+                }
+                socket.setSoTimeout(0);
+                if (myQueue.offer(new Request(socket, output, job))) {
+                    System.out.println("Job queued: " + job.getProjectPath() + " " + job.getProfile());
+                    write(output, QUEUED + myQueue.size());
+                } else {
+                    reply(socket, output, REJECTED + "queue is full");
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to read a job: " + e.getMessage());
+                close(socket);
+            }
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Request request;
+            try {
+                request = myQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            String verdict;
+            try {
+                request.myJob.start();
+                verdict = request.myJob.waitFor(myJobTimeout);
+            } catch (InterruptedException e) {
+                return;
+            }
+            System.out.println("Job finished in " + request.myJob.getTime() + " ms: " + verdict);
+            try {
+                reply(request.mySocket, request.myOutput, VERDICT + verdict);
+            } catch (IOException e) {
+                // client has gone
+                close(request.mySocket);
+            }
+        }
+    }
+
+    private static void write(OutputStream output, String line) throws IOException {
+        output.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        output.flush();
+    }
+
+    private static void reply(Socket socket, OutputStream output, String line) throws IOException {
+        try {
+            write(output, line);
+        } finally {
+            close(socket);
+        }
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static class Request {
+        private final Socket mySocket;
+        private final OutputStream myOutput;
+        private final InspectionJob myJob;
+
+        private Request(Socket socket, OutputStream output, InspectionJob job) {
+            mySocket = socket;
+            myOutput = output;
+            myJob = job;
+        }
+    }
+}
@@ -10,23 +10,28 @@ import com.intellij.openapi.application.*;
 import com.intellij.openapi.application.ex.ApplicationEx;
 import com.intellij.openapi.application.ex.ApplicationInfoEx;
 import com.intellij.openapi.application.ex.ApplicationManagerEx;
-import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.compiler.*;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.OrderEnumerator;
 import com.intellij.openapi.util.Comparing;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
+import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiDirectory;
+import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiJavaFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.search.scope.packageSet.NamedScope;
+import com.intellij.util.PathUtil;
 import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.surefire.log.api.ConsoleLogger;
 import org.apache.maven.plugins.surefire.report.ReportTestSuite;
@@ -45,18 +50,49 @@ import java.net.URL;
 import java.security.CodeSource;
 import java.security.ProtectionDomain;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 
 @SuppressWarnings("UseOfSystemOutOrSystemErr")
 public class InspectionTestApplication {
     private static final Logger LOG = Logger.getInstance("#com.intellij.codeInspection.InspectionApplication");
+    private static List<URL> ourPlatformURLs;
+    // jars of JUnit Platform, Jupiter and Vintage and their dependencies: artifact and version
+    private static final Pattern JUNIT_JAR = Pattern.compile("(junit-platform-[a-z-]+|junit-jupiter-[a-z-]+|junit-vintage-engine|opentest4j|apiguardian-api)-(\\d[\\w.-]*)\\.jar");
+    public static final String VERDICT_CORRECT = "correct";
+    public static final String VERDICT_INVALID = "invalid";
+    public static final String VERDICT_NOT_COMPILED = "not compiled";
+    public static final String VERDICT_FAILED = "failed";
 
     private List<VirtualFile> modifiedFiles = new ArrayList<>();
     private int failuresCount;
     public boolean detectTestRoots = true;
     public boolean detectMainRoots = true;
     public boolean isMaven = false;
+    public String myMavenExecutable = "mvn";
+    public boolean myIncrementalBuild;
+    public String myStatsPath;
+    // milliseconds, 0 - no timeout
+    public long myMavenTimeout;
+    public int myThreadsCount = 1;
+    public boolean myStreamingMode = false;
+    public String myCachePath;
+    public String myCostsPath;
+    // local inspections of a file are run in one traversal instead of one traversal per inspection
+    public boolean mySharedLocalPass;
+    public boolean myBenchmarkLocalPass;
+    public boolean myLinkWorkspace = false;
+    public List<String> myWorkspaceExcludes = new ArrayList<>();
+    public boolean myBisectMode = false;
+    public boolean myAffectedTestsMode = false;
+    // only files changed in git since this revision are inspected and fixed
+    public String mySinceRevision;
+    public int myTestShardsCount = 1;
+    public boolean myWarmClassLoader = true;
+    public Map<String, String> myTestConfigurationParameters = new HashMap<>();
     private boolean isDefaultProfile = false;
     public InspectionToolCmdlineOptionHelpProvider myHelpProvider;
     String myProjectPath;
@@ -65,6 +101,8 @@ public class InspectionTestApplication {
     public String myStubProfile;
     public String myProfileName;
     public String myProfilePath;
+    // name or path of the previous version of the profile, only tools with changed settings are tested
+    public String myBaselineProfile;
     public List<String> myTestClassDirectories = new ArrayList<>();
     public List<String> myMainClassDirectories = new ArrayList<>();
     private boolean myRunWithEditorSettings;
@@ -74,8 +112,31 @@ public class InspectionTestApplication {
     private List<ProblemDescriptor> allProblems = new ArrayList<>();
     private GlobalInspectionContextImpl context;
     private MavenUtils mavenUtils;
+    private QuickFixApplier myFixApplier;
+    private InspectionResultCache myResultCache;
+    private InspectionCostModel myCostModel;
+    private ProjectWorkspace myWorkspace;
+    private String myCopySubdirectory;
+    private List<Tools> myTools;
+    private TestOutcomes myBaselineOutcomes = new TestOutcomes();
+    private Set<String> myRegressedTestClasses = new HashSet<>();
+    private volatile InspectionProfiler myProfiler;
+    private volatile ToolDispatcher myDispatcher;
+    // dependencies resolved from the poms of a Maven project tested without -maven, null until resolved
+    @Nullable
+    private List<URL> myMavenDependencyURLs;
+    // modules of the Maven project owning modified files, null means the whole project
+    @Nullable
+    private List<String> myChangedModules;
+    // with -since, paths of changed files relative to the project directory
+    @Nullable
+    private Set<String> myChangedFiles;
 
     public boolean myErrorCodeRequired = true;
+    // if set, it is called with the verdict instead of exiting the IDE, e.g. when the application is a job of the server
+    public Consumer<String> myOnFinished;
+    private String myVerdict = VERDICT_FAILED;
+    private volatile boolean myFinished;
 
 
 
@@ -111,18 +172,140 @@ public class InspectionTestApplication {
     }
 
 
-    private void runInspections() throws IOException, JDOMException {
+    private void runInspections(@Nullable Set<String> toolNames) throws IOException, JDOMException {
+        List<Tools> allTools = initInspections(toolNames);
+        if (allTools == null) return;
+        myTools = allTools;
+
+        List<Tools> fileTools = new ArrayList<>();
+        allProblems.addAll(runGlobalInspections(allTools, fileTools));
+        if (myBenchmarkLocalPass) {
+            benchmarkLocalPass(fileTools);
+        }
+        long start = System.currentTimeMillis();
+        myDispatcher = new ToolDispatcher(myProject, fileTools);
+        allProblems.addAll(inspectFiles(fileTools, context, getAllInspectedFiles()));
+        logMessageLn(1, "Local and simple global inspections: " + fileTools.size() + " run per file in " +
+                (System.currentTimeMillis() - start) + " ms");
+        logMessageLn(1, myDispatcher.getStatistics());
+    }
+
+    // runs global tools once over the source directories, tools which are run per file are added to fileTools
+    private List<ProblemDescriptor> runGlobalInspections(List<Tools> tools, List<Tools> fileTools) {
+        List<Tools> globalTools = new ArrayList<>();
+        for (Tools tool : tools) {
+            (GlobalInspectionPass.isGlobal(tool) ? globalTools : fileTools).add(tool);
+        }
+        if (globalTools.isEmpty()) return new ArrayList<>();
+
+        List<VirtualFile> directories = new ArrayList<>();
+        for (PsiDirectory psiDirectory : findSourceDirectories()) {
+            directories.add(psiDirectory.getVirtualFile());
+        }
+        GlobalInspectionPass pass = new GlobalInspectionPass(myProject, context);
+        pass.setFileFilter(this::isChanged);
+        List<ProblemDescriptor> problems = pass.run(globalTools, directories, myProfiler);
+        for (Map.Entry<String, Throwable> failure : pass.getFailures().entrySet()) {
+            logMessageLn(3, failure.getKey() + " failed: " + failure.getValue());
+        }
+        logMessageLn(1, pass.getStatistics());
+
+        return problems;
+    }
+
+    private void benchmarkLocalPass(List<Tools> tools) {
+        List<PsiFile> allFiles = getAllInspectedFiles();
+        List<Tools> localTools = new ArrayList<>();
+        for (Tools tool : tools) {
+            if (tool.getTool() instanceof LocalInspectionToolWrapper) {
+                localTools.add(tool);
+            }
+        }
+        // the same tools are compared as the inspection run applies to each file, with a dispatcher of its own,
+        // so that the statistics of the run are not mixed up with the benchmark
+        ToolDispatcher dispatcher = new ToolDispatcher(myProject, localTools);
+        new LocalInspectionBenchmark().run(allFiles, file -> {
+            List<LocalInspectionToolWrapper> wrappers = new ArrayList<>();
+            for (Tools tool : dispatcher.select(file, localTools)) {
+                wrappers.add((LocalInspectionToolWrapper) tool.getTool());
+            }
+            return wrappers;
+        }, context);
+    }
+
+    // Problems of each file are fixed as soon as the file is inspected, instead of being collected in allProblems
+    private void runStreamingInspections(@Nullable Set<String> toolNames) throws Exception {
+        List<Tools> tools = ReadAction.compute(() -> initInspections(toolNames));
+        if (tools == null) return;
+        myTools = tools;
+
+        List<Tools> allTools = new ArrayList<>();
+        // global problems are fixed before files are inspected, so that they are not invalidated by fixes of other problems
+        applyFixes(ReadAction.compute(() -> runGlobalInspections(tools, allTools)));
+
+        List<PsiFile> allFiles = ReadAction.compute(this::getAllInspectedFiles);
+        myDispatcher = new ToolDispatcher(myProject, allTools);
+        new ProblemPipeline(myThreadsCount).run(allFiles, file -> inspectFile(file, allTools, context), this::applyFixes);
+        logMessageLn(1, myDispatcher.getStatistics());
+    }
+
+    // if toolNames is not null, only tools with these short names are used
+    @Nullable
+    private List<Tools> initInspections(@Nullable Set<String> toolNames) throws IOException, JDOMException {
         logMessageLn(1, InspectionsBundle.message("inspection.done"));
         logMessage(1, InspectionsBundle.message("inspection.application.initializing.project"));
 
         InspectionProfileImpl inspectionProfile = loadInspectionProfile();
-        if (inspectionProfile == null) return;
+        if (inspectionProfile == null) return null;
 
         final InspectionManagerEx im = (InspectionManagerEx) InspectionManager.getInstance(myProject);
 
         im.createNewGlobalContext(true).setExternalProfile(inspectionProfile);
         im.setProfile(inspectionProfile.getName());
 
+        final List<Tools> globalTools = new ArrayList<>();
+        final List<Tools> localTools = new ArrayList<>();
+        final List<Tools> globalSimpleTools = new ArrayList<>();
+        context = im.createNewGlobalContext(true);
+        context.initializeTools(globalTools, localTools, globalSimpleTools);
+        List<Tools> allTools = new ArrayList<>();
+        allTools.addAll(globalTools);
+        allTools.addAll(localTools);
+        allTools.addAll(globalSimpleTools);
+        if (toolNames != null) {
+            allTools.removeIf(tool -> !toolNames.contains(tool.getShortName()));
+        } else if (myBaselineProfile != null && !removeUnchangedTools(allTools)) {
+            return null;
+        }
+
+        return allTools;
+    }
+
+    // removes tools which have the same settings in the baseline profile, false if it cannot be loaded
+    private boolean removeUnchangedTools(List<Tools> tools) throws IOException, JDOMException {
+        // loaded after the tested profile is initialized, they can have the same name
+        InspectionProfileImpl baselineProfile = loadProfileByName(myBaselineProfile);
+        if (baselineProfile == null) {
+            baselineProfile = loadProfileByPath(myBaselineProfile);
+        }
+        if (baselineProfile == null) {
+            logError("Failed to load baseline profile '" + myBaselineProfile + "'");
+            gracefulExit();
+            return false;
+        }
+
+        int toolsCount = tools.size();
+        InspectionProfileImpl profile = baselineProfile;
+        tools.removeIf(tool -> {
+            Tools baselineTool = profile.getToolsOrNull(tool.getShortName(), myProject);
+            return baselineTool != null && ToolSettings.describe(baselineTool).equals(ToolSettings.describe(tool));
+        });
+        System.out.println("Profile delta: " + tools.size() + " of " + toolsCount + " enabled inspections changed since the baseline profile, " +
+                (toolsCount - tools.size()) + " skipped");
+        return true;
+    }
+
+    private List<PsiDirectory> findSourceDirectories() {
 //        List<VirtualFile> vfsDirs = new ArrayList<>();
         List<PsiDirectory> psiDirs = new ArrayList<>();
 
@@ -135,42 +318,39 @@ public class InspectionTestApplication {
             PsiDirectory psiDirectory = PsiManager.getInstance(myProject).findDirectory(vfsDir);
             psiDirs.add(psiDirectory);
         }
-        final List<Tools> globalTools = new ArrayList<>();
-        final List<Tools> localTools = new ArrayList<>();
-        final List<Tools> globalSimpleTools = new ArrayList<>();
-        context = im.createNewGlobalContext(true);
-        context.initializeTools(globalTools, localTools, globalSimpleTools);
-        List<Tools> allTools = new ArrayList<>();
-        allTools.addAll(globalTools);
-        allTools.addAll(localTools);
-        allTools.addAll(globalSimpleTools);
 
-        for (PsiDirectory psiDirectory : psiDirs) {
-            allProblems.addAll(inspectDirectoryRecursively(allTools, context, psiDirectory));
-        }
-    }
-
-    private void applyFixes() {
-        for (ProblemDescriptor problem : allProblems) {
-            QuickFix[] fixes = problem.getFixes();
-            if (fixes != null && fixes.length != 0) {
-                QuickFix fix = fixes[0];
-//                for (QuickFix fix : fixes) {
-                WriteCommandAction.runWriteCommandAction(context.getProject(), () -> {
-                    if (problem.getPsiElement() != null && fix != null ) {
-                        try {
-                            System.out.println("applying " + fix.getName());
-                            fix.applyFix(context.getProject(), problem);
-                        } catch (Throwable e) {
-                            if (fix != null)
-                                System.out.println(fix.getName() + " could not be applied");
-                        }
-                    }
+        return psiDirs;
+    }
 
-                });
+    private void inspectAndFix(@Nullable Set<String> toolNames) throws Exception {
+        myFixApplier = new QuickFixApplier(myProject);
+        if (myStreamingMode) {
+            runStreamingInspections(toolNames);
+        } else {
+            ReadAction.run(() -> runInspections(toolNames));
+            applyFixes(allProblems);
+            allProblems.clear();
+        }
+        myFixApplier.printStatistics();
+        modifiedFiles.addAll(myFixApplier.getModifiedFiles());
+    }
 
-            }
+    private void applyFixes(List<ProblemDescriptor> problems) {
+        if (myChangedFiles == null) {
+            myFixApplier.apply(problems);
+            return;
         }
+        // problems reported by global inspections outside of changed files are not fixed
+        myFixApplier.apply(ReadAction.compute(() -> {
+            List<ProblemDescriptor> changed = new ArrayList<>();
+            for (ProblemDescriptor problem : problems) {
+                PsiElement element = problem.getPsiElement();
+                if (element != null && element.getContainingFile() != null && isChanged(element.getContainingFile().getVirtualFile())) {
+                    changed.add(problem);
+                }
+            }
+            return changed;
+        }));
     }
 
 
@@ -195,6 +375,28 @@ public class InspectionTestApplication {
         return newPath.insert(myProjectPath.length(), "/" + subdirectory).toString();
     }
 
+    // reverts modifyPaths()
+    private void restorePaths(String subdirectory) {
+        myProjectPath = myProjectPath.substring(0, myProjectPath.length() - subdirectory.length() - 1);
+        myStubProfile = restorePath(myStubProfile, subdirectory);
+
+        for (int i = 0; i < mySourceDirectories.size(); i++) {
+            mySourceDirectories.set(i, restorePath(mySourceDirectories.get(i), subdirectory));
+        }
+
+        for (int i = 0; i < myMainClassDirectories.size(); i++) {
+            myMainClassDirectories.set(i, restorePath(myMainClassDirectories.get(i), subdirectory));
+        }
+        for (int i = 0; i < myTestClassDirectories.size(); i++) {
+            myTestClassDirectories.set(i, restorePath(myTestClassDirectories.get(i), subdirectory));
+        }
+    }
+
+    private String restorePath(String path, String subdirectory) {
+        StringBuffer newPath = new StringBuffer(path);
+        return newPath.delete(myProjectPath.length(), myProjectPath.length() + subdirectory.length() + 1).toString();
+    }
+
     private void initProject(String projectPath, Project projectToClose) throws IOException {
         myProjectPath = projectPath;
         myProjectPath = myProjectPath.replace(File.separatorChar, '/');
@@ -227,7 +429,7 @@ public class InspectionTestApplication {
         PatchProjectUtil.patchProject(myProject);
 
         // If we call initProject() for the first time
-        if (projectToClose == null) {
+        if (myCopySubdirectory == null) {
             if (isMaven) {
                 initMavenProject(myProject, vfsProject);
 
@@ -272,36 +474,80 @@ public class InspectionTestApplication {
     }
 
     private void makeCopy() throws IOException {
-        String subdirectory = myProject.getName() + "_copy";
-        boolean ok = new File(myProjectPath + "/" + subdirectory).mkdirs();
+        myCopySubdirectory = myProject.getName() + "_copy";
         FileDocumentManager.getInstance().saveAllDocuments();
-        FileUtils.copyDirectory(new File(myProjectPath), new File(myProjectPath + "/" + subdirectory));
-        modifyPaths(subdirectory);
+        createWorkspace();
+        modifyPaths(myCopySubdirectory);
         initProject(myProjectPath, myProject);
     }
 
-    private void recompileProject() throws IOException {
+    // replaces the current copy with a fresh copy of the original project
+    private void resetCopy() throws IOException {
+        FileDocumentManager.getInstance().saveAllDocuments();
+        closeProject();
+        modifiedFiles.clear();
+        restorePaths(myCopySubdirectory);
+        createWorkspace();
+        modifyPaths(myCopySubdirectory);
+        initProject(myProjectPath, null);
+    }
+
+    private void createWorkspace() throws IOException {
+        if (myWorkspace != null) {
+            myWorkspace.dispose();
+        }
+        List<String> outputDirectories = new ArrayList<>(myMainClassDirectories);
+        outputDirectories.addAll(myTestClassDirectories);
+        myWorkspace = new ProjectWorkspace(myProjectPath, myProjectPath + "/" + myCopySubdirectory, myWorkspaceExcludes, myLinkWorkspace, outputDirectories);
+        myWorkspace.create();
+        logMessageLn(1, myWorkspace.getStatistics());
+    }
+
+    private void recompileProject() {
+        compileProject(compiled -> {
+            boolean invalid = compiled && repeatTests();
+            if (!compiled) {
+                myVerdict = VERDICT_NOT_COMPILED;
+            }
+            if (myBisectMode && (invalid || !compiled)) {
+                new InspectionBisector(this::verifyTools, this::finish).start(myTools);
+            } else {
+                finish();
+            }
+        });
+    }
+
+    // onFinished is called with false if the project could not be compiled
+    private void compileProject(Consumer<Boolean> onFinished) {
+        FileDocumentManager.getInstance().saveAllDocuments();
         if (isMaven) {
-            try {
-                FileDocumentManager.getInstance().saveAllDocuments();
-                mavenUtils.mavenCompile(myProjectPath);
-                    FileDocumentManager.getInstance().saveAllDocuments();
-                    repeatTests();
-                } catch (InterruptedException e) {
-                e.printStackTrace();
-            } catch (IOException e) {
-                e.printStackTrace();
-            } finally {
-                FileUtils.deleteDirectory(new File(myProjectPath));
-                FileDocumentManager.getInstance().saveAllDocuments();
-                ApplicationManager.getApplication().invokeLater(() -> ApplicationManagerEx.getApplicationEx().exit(true, true), ModalityState.NON_MODAL);
-                return;
+            myChangedModules = myIncrementalBuild ? mavenUtils.findModules(myProjectPath, getModifiedPaths()) : null;
+            boolean compiled = true;
+            if (myChangedModules == null) {
+                try {
+                    compiled = mavenUtils.mavenCompile(myProjectPath);
+                } catch (InterruptedException | IOException e) {
+                    e.printStackTrace();
+                }
+            } else if (myChangedModules.isEmpty()) {
+                System.out.println("No modules are modified by fixes.");
+            } else {
+                System.out.println("Building modified modules: " + String.join(", ", myChangedModules));
+                compiled = mavenUtils.mavenCompile(myProjectPath, myChangedModules);
+            }
+            if (!compiled) {
+                System.err.println("Maven build failed");
             }
+            FileDocumentManager.getInstance().saveAllDocuments();
+            boolean result = compiled;
+            runStep(() -> onFinished.accept(result));
+            return;
         }
         CompilerManager compilerManager = CompilerManager.getInstance(myProject);
         compilerManager.compile(compilerManager.createProjectCompileScope(myProject), new CompileStatusNotification() {
                 @Override
                 public void finished(boolean aborted, int errors, int warnings, CompileContext compileContext) {
+                    boolean compiled = false;
                     if (errors > 0) {
                         System.err.println("Compilation finished with errors");
                         CompilerMessage[] messages = compileContext.getMessages(CompilerMessageCategory.ERROR);
@@ -313,16 +559,150 @@ public class InspectionTestApplication {
                         System.err.println("Compilation cancelled");
                     } else {
                         System.out.println("Compilation finished");
-                        ApplicationManager.getApplication().invokeLater(() ->  {
-                            FileDocumentManager.getInstance().saveAllDocuments();
-                            repeatTests();
-                        }, ModalityState.NON_MODAL);
+                        compiled = true;
                     }
-                    ApplicationManager.getApplication().invokeLater(() -> ApplicationManagerEx.getApplicationEx().exit(true, true), ModalityState.NON_MODAL);
+                    boolean result = compiled;
+                    ApplicationManager.getApplication().invokeLater(() -> runStep(() -> {
+                        FileDocumentManager.getInstance().saveAllDocuments();
+                        onFinished.accept(result);
+                    }), ModalityState.NON_MODAL);
                 }
             });
     }
 
+    private List<String> getChangedPaths() {
+        List<String> paths = new ArrayList<>();
+        for (String file : myChangedFiles) {
+            paths.add(myProjectPath + "/" + file);
+        }
+        return paths;
+    }
+
+    private List<VirtualFile> getChangedFiles() {
+        List<VirtualFile> files = new ArrayList<>();
+        for (String path : getChangedPaths()) {
+            VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
+            if (file != null) files.add(file);
+        }
+        return files;
+    }
+
+    // true for all files without -since
+    private boolean isChanged(@Nullable VirtualFile file) {
+        if (myChangedFiles == null) return true;
+        if (file == null) return false;
+        String path = file.getPath();
+        return path.startsWith(myProjectPath + "/") && myChangedFiles.contains(path.substring(myProjectPath.length() + 1));
+    }
+
+    private List<String> getModifiedPaths() {
+        List<String> paths = new ArrayList<>();
+        for (VirtualFile file : modifiedFiles) {
+            paths.add(file.getPath());
+        }
+        return paths;
+    }
+
+    private void finish() {
+        if (myOnFinished != null) {
+            // the IDE keeps running, so the copy must not stay open
+            closeProject();
+        }
+        if (isMaven) {
+            mavenUtils.printGoalTimes();
+            try {
+                FileUtils.deleteDirectory(new File(myProjectPath));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            FileDocumentManager.getInstance().saveAllDocuments();
+        }
+        if (myOnFinished != null) {
+            if (myWorkspace != null) {
+                myWorkspace.dispose();
+            }
+            notifyFinished(myVerdict);
+            return;
+        }
+        ApplicationManager.getApplication().invokeLater(() -> ApplicationManagerEx.getApplicationEx().exit(true, true), ModalityState.NON_MODAL);
+    }
+
+    // runs a step which follows an asynchronous compilation: its exceptions don't reach run(), so they are handled here
+    private void runStep(Runnable step) {
+        if (myFinished) {
+            // the job was cancelled or timed out, the rest of it is not run
+            closeProject();
+            return;
+        }
+        try {
+            step.run();
+        } catch (Throwable e) {
+            LOG.error(e);
+            logError(e.getMessage());
+            gracefulExit();
+        }
+    }
+
+    // stops the running Maven goal, the application finishes with the given verdict and its next steps are not run
+    public void cancel(String verdict) {
+        if (mavenUtils != null) {
+            mavenUtils.cancelRunningGoal();
+        }
+        if (myOnFinished != null) {
+            notifyFinished(verdict);
+        }
+    }
+
+    private synchronized void notifyFinished(String verdict) {
+        if (myFinished) return;
+        myFinished = true;
+        myOnFinished.accept(verdict);
+    }
+
+    // applies fixes of the given tools to a fresh copy and reports whether the project got broken
+    private void verifyTools(List<Tools> tools, Consumer<Boolean> onResult) {
+        try {
+            resetCopy();
+            Set<String> toolNames = new HashSet<>();
+            for (Tools tool : tools) {
+                toolNames.add(tool.getShortName());
+            }
+            inspectAndFix(toolNames);
+        } catch (Throwable e) {
+            LOG.error(e);
+            logError(e.getMessage());
+            gracefulExit();
+        }
+        compileProject(compiled -> onResult.accept(!compiled || rerunRegressedTests()));
+    }
+
+    // reruns only test classes which failed after all fixes were applied, true if some of their tests fail again
+    private boolean rerunRegressedTests() {
+        if (myRegressedTestClasses.isEmpty()) return false;
+
+        return !myBaselineOutcomes.diff(runTestsAndCollectOutcomes(myRegressedTestClasses)).getNewlyFailing().isEmpty();
+    }
+
+    // runs all tests if testClassNames is null
+    private TestOutcomes runTestsAndCollectOutcomes(@Nullable Collection<String> testClassNames) {
+        try {
+            if (isMaven) {
+                if (myChangedModules != null && myChangedModules.isEmpty()) {
+                    return new TestOutcomes();
+                }
+                mavenUtils.runTests(myProjectPath, testClassNames, myChangedModules);
+                mavenUtils.getFailures(myProjectPath);
+                return mavenUtils.getTestOutcomes();
+            }
+            JUnitRunner runner = runTests(testClassNames);
+            runner.getFailuresCount();
+            return runner.getTestOutcomes();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new TestOutcomes();
+        }
+    }
+
     private void run() {
         try {
         if (new File(myProjectPath + "_copy").exists()) {
@@ -331,18 +711,67 @@ public class InspectionTestApplication {
 
         }
         initProject(myProjectPath, null);
+        if (mySinceRevision != null) {
+            myChangedFiles = GitChanges.findChangedFiles(myProjectPath, mySinceRevision);
+            if (myChangedFiles == null) {
+                logError("Cannot find files changed since " + mySinceRevision);
+                gracefulExit();
+                return;
+            }
+            System.out.println(myChangedFiles.size() + " files changed since " + mySinceRevision);
+            // fixes are applied only to changed files, so only tests depending on them can be broken
+            myIncrementalBuild = isMaven;
+            myAffectedTestsMode = true;
+        }
         JUnitRunner runner = null;
         if (isMaven) {
-            mavenUtils.runTests(myProjectPath);
-            failuresCount = mavenUtils.getFailures();
+            List<String> modules = myChangedFiles != null ? mavenUtils.findModules(myProjectPath, getChangedPaths()) : null;
+            if (modules != null && modules.isEmpty()) {
+                System.out.println("No modules contain changed files, tests are not run");
+            } else {
+                mavenUtils.runTests(myProjectPath, null, modules);
+                failuresCount = mavenUtils.getFailures(myProjectPath);
+                myBaselineOutcomes = mavenUtils.getTestOutcomes();
+            }
         } else {
-            runner = runTests();
+            Set<String> testClasses = myChangedFiles != null ? findAffectedTestClasses(getChangedFiles()) : null;
+            if (testClasses != null && testClasses.isEmpty()) {
+                System.out.println("No tests are affected by changed files, tests are not run");
+            } else {
+                runner = runTests(testClasses);
+            }
         }
         makeCopy();
-        ReadAction.run(() -> runInspections());
-        applyFixes();
-        if (!isMaven)
+        if (myCachePath != null) {
+            myResultCache = new InspectionResultCache(myCachePath);
+            myResultCache.load();
+        }
+        if (myCostsPath != null) {
+            myCostModel = new InspectionCostModel(myCostsPath);
+            myCostModel.load();
+            logMessageLn(2, "Costs of " + myCostModel.size() + " inspections are known from previous runs");
+        }
+        if (myStatsPath != null) {
+            myProfiler = new InspectionProfiler();
+        }
+        inspectAndFix(null);
+        if (myProfiler != null) {
+            myProfiler.printSummary();
+            myProfiler.writeReport(myStatsPath);
+            // inspections run again by bisection are not profiled
+            myProfiler = null;
+        }
+        if (myCostModel != null) {
+            myCostModel.save();
+        }
+        if (myResultCache != null) {
+            myResultCache.save();
+            logMessageLn(2, myResultCache.getStatistics());
+        }
+        if (runner != null) {
             failuresCount = runner.getFailuresCount();
+            myBaselineOutcomes = runner.getTestOutcomes();
+        }
         recompileProject();
         } catch (Throwable e) {
             LOG.error(e);
@@ -351,30 +780,69 @@ public class InspectionTestApplication {
         }
     }
 
-    private void repeatTests() {
-        int newFailruesCount = 0;
-        if (isMaven) {
-            try {
-                mavenUtils.runTests(myProjectPath);
-                newFailruesCount = mavenUtils.getFailures();
-            } catch (MavenReportException e) {
-                e.printStackTrace();
-            }
-        } else {
-            JUnitRunner newRunner = null;
-            try {
-                newRunner = runTests();
-                newFailruesCount = newRunner.getFailuresCount();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    // returns true if fixes broke some tests
+    private boolean repeatTests() {
+        Set<String> testClasses = myAffectedTestsMode ? findAffectedTestClasses(modifiedFiles) : null;
+        if (testClasses != null && testClasses.isEmpty()) {
+            System.out.println("No tests are affected by fixes.");
+            System.out.println("Inspections are correct.");
+            myRegressedTestClasses = new HashSet<>();
+            myVerdict = VERDICT_CORRECT;
+            return false;
         }
 
-         if (newFailruesCount > failuresCount)  {
+        // a test broken by one fix could be repaired by another one, so tests are compared one by one, not by failures count
+        TestOutcomes.Diff diff = myBaselineOutcomes.diff(runTestsAndCollectOutcomes(testClasses));
+        diff.print();
+        myRegressedTestClasses = diff.getNewlyFailingClasses();
+
+         if (!diff.getNewlyFailing().isEmpty())  {
             System.out.println("Invalid inspection(s) detected!");
+            myVerdict = VERDICT_INVALID;
+            return true;
         } else {
             System.out.println("Inspections are correct.");
+            myVerdict = VERDICT_CORRECT;
+            return false;
+        }
+    }
+
+    // test classes which depend on classes of the given files, null if some file cannot be mapped to classes
+    @Nullable
+    private Set<String> findAffectedTestClasses(Collection<VirtualFile> files) {
+        long start = System.currentTimeMillis();
+        Set<String> modifiedClasses = new HashSet<>();
+        for (VirtualFile file : files) {
+            PsiFile psiFile = file.isValid() ? PsiManager.getInstance(myProject).findFile(file) : null;
+            if (!(psiFile instanceof PsiJavaFile)) {
+                logMessageLn(1, "Cannot find classes affected by changes in " + file.getPath() + ", all tests will be run");
+                return null;
+            }
+            for (PsiClass psiClass : ((PsiJavaFile) psiFile).getClasses()) {
+                if (psiClass.getQualifiedName() != null) {
+                    modifiedClasses.add(psiClass.getQualifiedName());
+                }
+            }
         }
+
+        ClassDependencyIndex index = new ClassDependencyIndex();
+        try {
+            for (String dir : myMainClassDirectories) {
+                index.addDirectory(dir, false);
+            }
+            for (String dir : myTestClassDirectories) {
+                index.addDirectory(dir, true);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        Set<String> affected = index.findDependents(modifiedClasses);
+        affected.retainAll(index.getTestClasses());
+        logMessageLn(1, "Test classes affected by fixes: " + affected.size() + " of " + index.getTestClasses().size() +
+                " (" + index.getClassFilesCount() + " class files indexed in " + (System.currentTimeMillis() - start) + " ms)");
+
+        return affected;
     }
 
     private void gracefulExit() {
@@ -382,6 +850,12 @@ public class InspectionTestApplication {
             System.exit(1);
         } else {
             closeProject();
+            if (myOnFinished != null) {
+                if (myWorkspace != null) {
+                    myWorkspace.dispose();
+                }
+                notifyFinished(VERDICT_FAILED);
+            }
             throw new RuntimeException("Failed to proceed");
         }
     }
@@ -492,6 +966,22 @@ public class InspectionTestApplication {
         };
     }
 
+    // strategy is "fixed:<parallelism>" or "dynamic[:<factor>]"
+    public void setTestParallelism(String strategy) {
+        String[] parts = strategy.split(":");
+        myTestConfigurationParameters.put("junit.jupiter.execution.parallel.enabled", "true");
+        myTestConfigurationParameters.put("junit.jupiter.execution.parallel.mode.default", "concurrent");
+        if ("fixed".equals(parts[0]) && parts.length == 2) {
+            myTestConfigurationParameters.put("junit.jupiter.execution.parallel.config.strategy", "fixed");
+            myTestConfigurationParameters.put("junit.jupiter.execution.parallel.config.fixed.parallelism", String.valueOf(Integer.parseInt(parts[1])));
+        } else if ("dynamic".equals(parts[0])) {
+            myTestConfigurationParameters.put("junit.jupiter.execution.parallel.config.strategy", "dynamic");
+            myTestConfigurationParameters.put("junit.jupiter.execution.parallel.config.dynamic.factor", parts.length == 2 ? parts[1] : "1");
+        } else {
+            throw new IllegalArgumentException("Unknown test parallelism strategy: " + strategy);
+        }
+    }
+
     public void setVerboseLevel(int verboseLevel) {
         myVerboseLevel = verboseLevel;
     }
@@ -513,27 +1003,154 @@ public class InspectionTestApplication {
     }
 
 
-    private List<ProblemDescriptor> inspectDirectoryRecursively(List<Tools> tools, GlobalInspectionContextImpl context, PsiDirectory directory) {
+    // files of all source directories are scheduled together, so that work is balanced over the whole project
+    private List<ProblemDescriptor> inspectFiles(List<Tools> tools, GlobalInspectionContextImpl context, List<PsiFile> allFiles) {
+        if (myCostModel != null) {
+            InspectionScheduler scheduler = new InspectionScheduler(myCostModel, myThreadsCount);
+            List<ProblemDescriptor> problems = scheduler.inspect(allFiles, tools,
+                    (file, fileTools) -> inspectFileByTools(file, fileTools, context), this::inspectFileInOnePass);
+            logMessageLn(1, scheduler.getStatistics());
+            return problems;
+        }
+        if (myThreadsCount > 1) {
+            return new ParallelInspector(myThreadsCount).inspect(allFiles, file -> inspectFile(file, tools, context));
+        }
+
         List<ProblemDescriptor> problems = new ArrayList<>();
-        List<PsiFile> allFiles = getAllPsiFiles(directory);
-        if (allFiles.size() != 0) {
-            for (PsiFile file : allFiles) {
-                for (Tools tool : tools) {
-                    List<ProblemDescriptor> list = new ArrayList<>();
-                    try {
-                        list = InspectionEngine.runInspectionOnFile(file, tool.getTool(), context);
-                    } catch (Throwable e) {
+        long start = System.currentTimeMillis();
+        for (PsiFile file : allFiles) {
+            problems.addAll(inspectFile(file, tools, context));
+        }
+        logMessageLn(1, "Inspected " + allFiles.size() + " files in " + (System.currentTimeMillis() - start) + " ms");
 
-                    }
-//                    System.out.println(tool.getTool().getShortName() + " to " + file.getName());
-                    problems.addAll(list);
+        return problems;
+    }
+
+    private List<ProblemDescriptor> inspectFile(PsiFile file, List<Tools> tools, GlobalInspectionContextImpl context) {
+        if (!mySharedLocalPass) {
+            return inspectFileByTools(file, tools, context);
+        }
+        List<Tools> localTools = new ArrayList<>();
+        List<Tools> otherTools = new ArrayList<>();
+        for (Tools tool : tools) {
+            (tool.getTool() instanceof LocalInspectionToolWrapper ? localTools : otherTools).add(tool);
+        }
+        List<ProblemDescriptor> problems = inspectFileInOnePass(file, localTools);
+        problems.addAll(inspectFileByTools(file, otherTools, context));
+
+        return problems;
+    }
+
+    // tools which are applicable to the language of the file
+    private List<Tools> selectTools(PsiFile file, List<Tools> tools) {
+        ToolDispatcher dispatcher = myDispatcher;
+        return dispatcher != null ? dispatcher.select(file, tools) : tools;
+    }
+
+    // runs tools one by one, each of them traverses the file
+    private List<ProblemDescriptor> inspectFileByTools(PsiFile file, List<Tools> allTools, GlobalInspectionContextImpl context) {
+        List<Tools> tools = selectTools(file, allTools);
+        List<ProblemDescriptor> problems = new ArrayList<>();
+        String fileHash = myResultCache != null ? myResultCache.hashContent(file) : null;
+        InspectionProfiler profiler = myProfiler;
+        for (Tools tool : tools) {
+            if (fileHash != null && myResultCache.isClean(fileHash, tool)) {
+                if (profiler != null) profiler.recordCached(tool.getShortName());
+                continue;
+            }
+            List<ProblemDescriptor> list = new ArrayList<>();
+            long start = System.nanoTime();
+            boolean failed = false;
+            try {
+                list = InspectionEngine.runInspectionOnFile(file, tool.getTool(), context);
+                if (fileHash != null) {
+                    myResultCache.put(fileHash, tool, list.size());
                 }
+            } catch (ProcessCanceledException e) {
+                throw e;
+            } catch (Throwable e) {
+                failed = true;
+                logMessageLn(3, tool.getShortName() + " failed on " + file.getName() + ": " + e);
+            }
+            long nanos = System.nanoTime() - start;
+            if (profiler != null) {
+                profiler.record(tool.getShortName(), file.getVirtualFile().getPath(), nanos, list.size(), failed);
+            }
+            if (myCostModel != null) {
+                myCostModel.record(tool.getShortName(), nanos, file.getVirtualFile().getLength());
             }
+//            System.out.println(tool.getTool().getShortName() + " to " + file.getName());
+            problems.addAll(list);
         }
 
         return problems;
     }
 
+    // local tools are run together by a single pass over the PSI tree of the file
+    private List<ProblemDescriptor> inspectFileInOnePass(PsiFile file, List<Tools> allTools) {
+        List<Tools> tools = selectTools(file, allTools);
+        String fileHash = myResultCache != null ? myResultCache.hashContent(file) : null;
+        InspectionProfiler profiler = myProfiler;
+        List<Tools> toolsToRun = new ArrayList<>();
+        List<LocalInspectionToolWrapper> wrappers = new ArrayList<>();
+        for (Tools tool : tools) {
+            if (fileHash != null && myResultCache.isClean(fileHash, tool)) {
+                if (profiler != null) profiler.recordCached(tool.getShortName());
+                continue;
+            }
+            LocalInspectionToolWrapper wrapper = (LocalInspectionToolWrapper) tool.getTool();
+            // as InspectionEngine.runInspectionOnFile does
+            wrapper.initialize(context);
+            toolsToRun.add(tool);
+            wrappers.add(wrapper);
+        }
+        if (toolsToRun.isEmpty()) return new ArrayList<>();
+
+        long start = System.nanoTime();
+        LocalInspectionPass pass = new LocalInspectionPass(file);
+        Map<String, List<ProblemDescriptor>> results = pass.run(wrappers);
+        for (Map.Entry<String, Throwable> failure : pass.getFailures().entrySet()) {
+            logMessageLn(3, failure.getKey() + " failed on " + file.getName() + ": " + failure.getValue());
+        }
+
+        // time of each tool in the pass is not known, it is divided equally
+        long nanos = (System.nanoTime() - start) / toolsToRun.size();
+        List<ProblemDescriptor> problems = new ArrayList<>();
+        for (Tools tool : toolsToRun) {
+            List<ProblemDescriptor> list = results.getOrDefault(tool.getShortName(), Collections.emptyList());
+            boolean failed = pass.getFailures().containsKey(tool.getShortName());
+            if (fileHash != null && !failed) {
+                myResultCache.put(fileHash, tool, list.size());
+            }
+            if (profiler != null) {
+                profiler.record(tool.getShortName(), file.getVirtualFile().getPath(), nanos, list.size(), failed);
+            }
+            // batched tools are measured too, otherwise their costs would never be updated
+            if (myCostModel != null) {
+                myCostModel.record(tool.getShortName(), nanos, file.getVirtualFile().getLength());
+            }
+            problems.addAll(list);
+        }
+
+        return problems;
+    }
+
+    // files of all source directories to inspect
+    private List<PsiFile> getAllInspectedFiles() {
+        List<PsiFile> files = new ArrayList<>();
+        for (PsiDirectory psiDirectory : findSourceDirectories()) {
+            files.addAll(getInspectedFiles(psiDirectory));
+        }
+        return files;
+    }
+
+    // files of the directory to inspect, with -since only files changed since the revision
+    private List<PsiFile> getInspectedFiles(PsiDirectory directory) {
+        List<PsiFile> files = getAllPsiFiles(directory);
+        files.removeIf(file -> !isChanged(file.getVirtualFile()));
+        return files;
+    }
+
     private List<PsiFile> getAllPsiFiles(PsiDirectory directory) {
         List<PsiFile> files = new ArrayList<>();
         PsiFile[] filesArray = directory.getFiles();
@@ -551,15 +1168,17 @@ public class InspectionTestApplication {
     }
 
     private JUnitRunner runTests() throws MalformedURLException, NoSuchFieldException, IllegalAccessException {
-        ClassLoader pluginCL = JUnitRunner.class.getClassLoader();
-        Class c = pluginCL.getClass().getSuperclass();
-        Field f = c.getDeclaredField("myURLs");
-        f.setAccessible(true);
-        List<URL> myURLs = new ArrayList<>((ArrayList<URL>) f.get(pluginCL));
+        return runTests(null);
+    }
+
+    // runs only the given test classes if testClassNames is not null
+    private JUnitRunner runTests(@Nullable Collection<String> testClassNames) throws MalformedURLException, NoSuchFieldException, IllegalAccessException {
+        List<URL> myURLs = getTestClassPath();
+        List<URL> projectURLs = new ArrayList<>();
         List<PsiFile> psiTestFiles = new ArrayList<>();
 
         for (String testClassDirectory : myTestClassDirectories) {
-            myURLs.add(new File(testClassDirectory).toURI().toURL());
+            projectURLs.add(new File(testClassDirectory).toURI().toURL());
             PsiDirectory testPsiDirectory = PsiManager.getInstance(myProject).findDirectory(LocalFileSystem.getInstance().findFileByPath(testClassDirectory));
             psiTestFiles.addAll(getAllPsiFiles(testPsiDirectory));
         }
@@ -571,22 +1190,24 @@ public class InspectionTestApplication {
                 String packageName = ((PsiJavaFile) psiTestFile).getPackageName();
                 if (packageName != "") packageName += ".";
                 String fullName = packageName + psiTestFile.getVirtualFile().getNameWithoutExtension();
-                classNames.add(fullName);
-            } else {
-                myURLs.add(new File(psiTestFile.getVirtualFile().getPath()).toURI().toURL());
+                if (testClassNames == null || testClassNames.contains(fullName))
+                    classNames.add(fullName);
+            } else if ("jar".equalsIgnoreCase(psiTestFile.getVirtualFile().getExtension())) {
+                // other files are resources and are found through the directory itself
+                projectURLs.add(new File(psiTestFile.getVirtualFile().getPath()).toURI().toURL());
             }
         }
         JUnitRunner runner = new JUnitRunner();
 
         for (String mainClassDirectory : myMainClassDirectories) {
-            myURLs.add(new File(mainClassDirectory).toURI().toURL());
+            projectURLs.add(new File(mainClassDirectory).toURI().toURL());
         }
-        ClassLoader contextCL = Thread.currentThread().getContextClassLoader();
-        f = contextCL.getClass().getDeclaredField("myURLs");
-        f.setAccessible(true);
-        myURLs.addAll((ArrayList<URL>) f.get(contextCL));
         runner.addURLs(myURLs);
+        runner.addProjectURLs(projectURLs);
+        runner.setReuseParentClassLoader(myWarmClassLoader);
         runner.setTestClassNames(classNames);
+        runner.setShardsCount(myTestShardsCount);
+        runner.setConfigurationParameters(myTestConfigurationParameters);
         try {
             runner.startThread();
         } catch (Exception e) {
@@ -595,10 +1216,112 @@ public class InspectionTestApplication {
         return runner;
     }
 
+    // class path of the plugin, the IDE and the project libraries. The JUnit bundled with the plugin comes first, unless the
+    // project has its own JUnit Platform launcher: parts of different Platform versions cannot be mixed
+    private List<URL> getTestClassPath() throws MalformedURLException, NoSuchFieldException, IllegalAccessException {
+        List<URL> libraryURLs = getLibraryURLs();
+        List<URL> projectJUnitURLs = new ArrayList<>();
+        boolean hasLauncher = false;
+        for (URL url : libraryURLs) {
+            Matcher matcher = JUNIT_JAR.matcher(PathUtil.getFileName(url.getPath()));
+            if (matcher.matches()) {
+                projectJUnitURLs.add(url);
+                hasLauncher |= "junit-platform-launcher".equals(matcher.group(1));
+            }
+        }
+
+        List<URL> urls = new ArrayList<>();
+        if (hasLauncher) {
+            urls.addAll(projectJUnitURLs);
+            for (URL url : getPlatformURLs()) {
+                if (!JUNIT_JAR.matcher(PathUtil.getFileName(url.getPath())).matches()) urls.add(url);
+            }
+            libraryURLs.removeAll(projectJUnitURLs);
+        } else {
+            urls.addAll(getPlatformURLs());
+        }
+        urls.addAll(libraryURLs);
+
+        if (!myTestConfigurationParameters.isEmpty()) {
+            String engineVersion = getJupiterEngineVersion(urls);
+            // older engines silently ignore junit.jupiter.execution.parallel.*
+            if (engineVersion == null || StringUtil.compareVersionNumbers(engineVersion, "5.3") < 0) {
+                throw new IllegalStateException("-testParallel requires JUnit Jupiter 5.3 or newer, but tests would be run with " +
+                        (engineVersion == null ? "no Jupiter engine" : "Jupiter " + engineVersion) +
+                        (hasLauncher ? "" : " bundled with the plugin; add org.junit.platform:junit-platform-launcher 1.3+ to the test dependencies of the project to run them with its JUnit"));
+            }
+        }
+        return urls;
+    }
+
+    // version of the first Jupiter engine on the class path, which is the one loaded
+    @Nullable
+    private static String getJupiterEngineVersion(List<URL> urls) {
+        for (URL url : urls) {
+            Matcher matcher = JUNIT_JAR.matcher(PathUtil.getFileName(url.getPath()));
+            if (matcher.matches() && "junit-jupiter-engine".equals(matcher.group(1))) {
+                return matcher.group(2);
+            }
+        }
+        return null;
+    }
+
+    // class path of the plugin and of the IDE, they don't change while the application is running
+    private static synchronized List<URL> getPlatformURLs() throws NoSuchFieldException, IllegalAccessException {
+        if (ourPlatformURLs == null) {
+            ClassLoader pluginCL = JUnitRunner.class.getClassLoader();
+            Class c = pluginCL.getClass().getSuperclass();
+            Field f = c.getDeclaredField("myURLs");
+            f.setAccessible(true);
+            List<URL> myURLs = new ArrayList<>((ArrayList<URL>) f.get(pluginCL));
+
+            ClassLoader contextCL = Thread.currentThread().getContextClassLoader();
+            f = contextCL.getClass().getDeclaredField("myURLs");
+            f.setAccessible(true);
+            myURLs.addAll((ArrayList<URL>) f.get(contextCL));
+            ourPlatformURLs = myURLs;
+        }
+        return ourPlatformURLs;
+    }
+
+    // jars of the libraries the project depends on
+    private List<URL> getLibraryURLs() throws MalformedURLException {
+        List<URL> libraryURLs = new ArrayList<>();
+        for (VirtualFile root : OrderEnumerator.orderEntries(myProject).librariesOnly().getClassesRoots()) {
+            String path = PathUtil.getLocalPath(root);
+            if (path != null) libraryURLs.add(new File(path).toURI().toURL());
+        }
+        // libraries known to the IDE come first, they are what the project was compiled with
+        Set<String> known = new HashSet<>();
+        for (URL url : libraryURLs) {
+            known.add(url.toString());
+        }
+        for (URL url : getMavenDependencyURLs()) {
+            if (known.add(url.toString())) libraryURLs.add(url);
+        }
+        return libraryURLs;
+    }
+
+    // a project with poms can be opened before (or without) the IDE has imported its Maven libraries,
+    // so the dependencies of its modules are resolved from the local repository once per run
+    private List<URL> getMavenDependencyURLs() {
+        if (myMavenDependencyURLs == null) {
+            myMavenDependencyURLs = new ArrayList<>();
+            VirtualFile projectDirectory = LocalFileSystem.getInstance().findFileByPath(myProjectPath);
+            if (projectDirectory != null && projectDirectory.findChild("pom.xml") != null) {
+                myMavenDependencyURLs = new MavenUtils(myProject, projectDirectory).getAllMavenDependecies();
+            }
+        }
+        return myMavenDependencyURLs;
+    }
+
     private void initMavenProject(Project project, VirtualFile projectPath) {
         mavenUtils = new MavenUtils(project, projectPath);
+        mavenUtils.setMavenExecutable(myMavenExecutable);
+        mavenUtils.setGoalTimeout(myMavenTimeout);
 
         List<MavenProjectReaderResult> projects = mavenUtils.getAllProjects();
+        logMessageLn(2, mavenUtils.getScanStatistics());
         mySourceDirectories.clear();
 
         for (MavenProjectReaderResult mavenProject : projects) {
@@ -608,6 +1331,12 @@ public class InspectionTestApplication {
                     mySourceDirectories.add(dir);
                 }
             }
+            if (detectMainRoots) {
+                myMainClassDirectories.add(mavenProject.mavenModel.getBuild().getOutputDirectory().replace(File.separatorChar, '/'));
+            }
+            if (detectTestRoots) {
+                myTestClassDirectories.add(mavenProject.mavenModel.getBuild().getTestOutputDirectory().replace(File.separatorChar, '/'));
+            }
         }
 
         try {
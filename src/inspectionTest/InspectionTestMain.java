@@ -7,9 +7,12 @@ import com.intellij.openapi.application.ApplicationStarter;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class InspectionTestMain implements ApplicationStarter {
     private InspectionTestApplication myApplication;
+    private InspectionServer myServer;
+    private InspectionBatch myBatch;
 
     @Override
     public String getCommandName() {
@@ -19,13 +22,45 @@ public class InspectionTestMain implements ApplicationStarter {
     @Override
     @SuppressWarnings({"HardCodedStringLiteral"})
     public void premain(String[] args) {
+        if (args.length >= 3 && "-server".equals(args[1])) {
+            try {
+                int port = Integer.parseInt(args[2]);
+                int queueSize = InspectionServer.DEFAULT_QUEUE_SIZE;
+                long jobTimeout = InspectionJob.DEFAULT_TIMEOUT;
+                for (int i = 3; i + 1 < args.length; i += 2) {
+                    if ("-queue".equals(args[i])) {
+                        queueSize = Integer.parseInt(args[i + 1]);
+                    } else if ("-jobTimeout".equals(args[i])) {
+                        jobTimeout = TimeUnit.MINUTES.toMillis(Long.parseLong(args[i + 1]));
+                    } else {
+                        throw new NumberFormatException("unexpected argument: " + args[i]);
+                    }
+                }
+                myServer = new InspectionServer(port, queueSize, jobTimeout);
+            } catch (NumberFormatException e) {
+                System.err.println("invalid args:" + Arrays.toString(args));
+                printHelp();
+            }
+            return;
+        }
+
+        if (args.length == 3 && "-batch".equals(args[1])) {
+            myBatch = new InspectionBatch(args[2]);
+            return;
+        }
+
         if (args.length < 4) {
             System.err.println("invalid args:" + Arrays.toString(args));
             printHelp();
         }
 
         //System.setProperty("idea.load.plugins.category", "inspection");
-        myApplication = new InspectionTestApplication();
+        try {
+            myApplication = parseArguments(Arrays.copyOfRange(args, 1, args.length));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printHelp();
+        }
 
         myApplication.myHelpProvider = new InspectionToolCmdlineOptionHelpProvider() {
             @Override
@@ -33,80 +68,159 @@ public class InspectionTestMain implements ApplicationStarter {
                 printHelp();
             }
         };
-        myApplication.myProjectPath = args[1];
-        myApplication.myStubProfile = args[2];
+    }
 
-        if (myApplication.myProjectPath == null
-                || myApplication.myStubProfile == null) {
-            System.err.println(myApplication.myProjectPath + myApplication.myStubProfile);
-            printHelp();
+    // args are <project> <profile> [<options>], also used for jobs of the server
+    public static InspectionTestApplication parseArguments(String[] args) throws IllegalArgumentException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("invalid args:" + Arrays.toString(args));
         }
+        InspectionTestApplication application = new InspectionTestApplication();
+        application.myProjectPath = args[0];
+        application.myStubProfile = args[1];
 
-
+        Set<String> availableArgs = new HashSet<>(Arrays.asList("-profileName", "-profilePath", "-d", "-v0", "-v1", "-v2", "-v3", "-t", "-m", "-maven", "-j", "-stream", "-cache", "-workspace", "-exclude", "-bisect", "-affectedTests", "-testParallel", "-testShards", "-freshClassLoaders", "-mavenExecutable", "-incrementalBuild", "-mavenTimeout", "-stats", "-costs", "-localPass", "-since", "-baselineProfile"));
         try {
-            Set<String> availableArgs = new HashSet<>(Arrays.asList("-profileName", "-profilePath", "-d", "-v0", "-v1", "-v2", "-v3", "-t", "-m", "-maven"));
-
-            for (int i = 3; i < args.length; i++) {
+            for (int i = 2; i < args.length; i++) {
                 String arg = args[i];
                 if ("-profileName".equals(arg)) {
-                    myApplication.myProfileName = args[++i];
+                    application.myProfileName = args[++i];
                 } else if ("-profilePath".equals(arg)) {
-                    myApplication.myProfilePath = args[++i];
+                    application.myProfilePath = args[++i];
                 } else if ("-d".equals(arg)) {
-                    myApplication.mySourceDirectories.add(args[++i]);
+                    application.mySourceDirectories.add(args[++i]);
                 }
                 else if ("-v0".equals(arg)) {
-                    myApplication.setVerboseLevel(0);
+                    application.setVerboseLevel(0);
                 }
                 else if ("-v1".equals(arg)) {
-                    myApplication.setVerboseLevel(1);
+                    application.setVerboseLevel(1);
                 }
                 else if ("-v2".equals(arg)) {
-                    myApplication.setVerboseLevel(2);
+                    application.setVerboseLevel(2);
                 }
                 else if ("-v3".equals(arg)) {
-                    myApplication.setVerboseLevel(3);
+                    application.setVerboseLevel(3);
                 }
                 else if ("-maven".equals(arg)) {
-                    myApplication.isMaven = true;
+                    application.isMaven = true;
+                }
+                else if ("-localPass".equals(arg)) {
+                    String mode = args[++i];
+                    if (!"shared".equals(mode) && !"perTool".equals(mode) && !"benchmark".equals(mode)) {
+                        throw new IllegalArgumentException("unexpected local pass mode: " + mode);
+                    }
+                    application.mySharedLocalPass = "shared".equals(mode);
+                    application.myBenchmarkLocalPass = "benchmark".equals(mode);
+                }
+                else if ("-baselineProfile".equals(arg)) {
+                    application.myBaselineProfile = args[++i];
+                }
+                else if ("-since".equals(arg)) {
+                    application.mySinceRevision = args[++i];
+                }
+                else if ("-costs".equals(arg)) {
+                    application.myCostsPath = args[++i];
+                }
+                else if ("-stats".equals(arg)) {
+                    application.myStatsPath = args[++i];
+                }
+                else if ("-mavenTimeout".equals(arg)) {
+                    application.myMavenTimeout = TimeUnit.MINUTES.toMillis(Long.parseLong(args[++i]));
+                }
+                else if ("-incrementalBuild".equals(arg)) {
+                    application.myIncrementalBuild = true;
+                }
+                else if ("-mavenExecutable".equals(arg)) {
+                    application.myMavenExecutable = args[++i];
+                }
+                else if ("-workspace".equals(arg)) {
+                    String mode = args[++i];
+                    if (!"link".equals(mode) && !"copy".equals(mode)) {
+                        throw new IllegalArgumentException("unexpected workspace mode: " + mode);
+                    }
+                    application.myLinkWorkspace = "link".equals(mode);
+                }
+                else if ("-testParallel".equals(arg)) {
+                    application.setTestParallelism(args[++i]);
+                }
+                else if ("-freshClassLoaders".equals(arg)) {
+                    application.myWarmClassLoader = false;
+                }
+                else if ("-testShards".equals(arg)) {
+                    application.myTestShardsCount = Math.max(1, Integer.parseInt(args[++i]));
+                }
+                else if ("-affectedTests".equals(arg)) {
+                    application.myAffectedTestsMode = true;
+                }
+                else if ("-bisect".equals(arg)) {
+                    application.myBisectMode = true;
+                }
+                else if ("-exclude".equals(arg)) {
+                    application.myWorkspaceExcludes.add(args[++i]);
+                }
+                else if ("-cache".equals(arg)) {
+                    application.myCachePath = args[++i];
+                }
+                else if ("-stream".equals(arg)) {
+                    application.myStreamingMode = true;
+                }
+                else if ("-j".equals(arg)) {
+                    int threads = Integer.parseInt(args[++i]);
+                    application.myThreadsCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
                 }
                 else if ("-t".equals(arg)) {
                     while (!availableArgs.contains(args[i + 1])) {
-                        myApplication.myTestClassDirectories.add(args[++i]);
+                        application.myTestClassDirectories.add(args[++i]);
                         if (i + 1 >= args.length) break;
                     }
                 }
                 else if ("-m".equals(arg)) {
                     while (!availableArgs.contains(args[i + 1])) {
-                        myApplication.myMainClassDirectories.add(args[++i]);
+                        application.myMainClassDirectories.add(args[++i]);
                         if (i + 1 >= args.length) break;
                     }
                 }
                 else {
-                    System.err.println("unexpected argument: " + arg);
-                    printHelp();
+                    throw new IllegalArgumentException("unexpected argument: " + arg);
                 }
             }
-            if (!myApplication.myMainClassDirectories.isEmpty())
-                myApplication.detectMainRoots = false;
-            if (!myApplication.myTestClassDirectories.isEmpty())
-                myApplication.detectTestRoots = false;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("value of the option " + args[args.length - 1] + " is missing");
         }
-        catch (ArrayIndexOutOfBoundsException e) {
-            e.printStackTrace();
-            printHelp();
+        if (!application.myMainClassDirectories.isEmpty())
+            application.detectMainRoots = false;
+        if (!application.myTestClassDirectories.isEmpty())
+            application.detectTestRoots = false;
+        if (application.myStreamingMode && application.myCostsPath != null) {
+            throw new IllegalArgumentException("-costs is not supported with -stream, files are streamed to fixes in their order instead of being scheduled by costs");
+        }
+        if (application.isMaven && !application.myTestConfigurationParameters.isEmpty()) {
+            throw new IllegalArgumentException("-testParallel is not supported with -maven, surefire runs tests with the JUnit configuration of the project");
         }
 
-        myApplication.myRunGlobalToolsOnly = System.getProperty("idea.no.local.inspections") != null;
+        application.myRunGlobalToolsOnly = System.getProperty("idea.no.local.inspections") != null;
+        return application;
     }
 
     @Override
     public void main(String[] args) {
+        if (myServer != null) {
+            myServer.start();
+            return;
+        }
+        if (myBatch != null) {
+            myBatch.start();
+            return;
+        }
         myApplication.startup();
     }
 
     public static void printHelp() {
         String help = "Expected parameters: <project_file_path> <inspection_profile> \n " +
+        "or: -batch <jobs_file>  --  run jobs listed in the file one after another, a line has the arguments described here \n " +
+        "or: -server <port> [-queue <size>] [-jobTimeout <minutes>]  --  keep the IDE running and inspect projects sent by inspectionTest.InspectionClient; \n " +
+        "    a job which runs longer than the timeout (120 minutes by default, 0 - none) is cancelled \n " +
         "<inspections_profile> -- use here profile name configured in the project or locally or path to the inspection profile; can be stabbed when one of the -e|-profileName|-profilePath is used\n" +
         "[<options>]\n " +
         "Available options are:\n" +
@@ -114,6 +228,26 @@ public class InspectionTestMain implements ApplicationStarter {
         "-t <test_classes_root>...  --  test classes root directories (only these test classes will be run); if not specified, root directory will be searched in project settings \n" +
         "-m <main_classes_root>...  --  main classes root (needed for test classes); if not specified, root directory will be searched in project settings \n" +
         "-v[0|1|2]            --  verbose level. 0 - silent, 1 - verbose, 2 - most verbose. \n" +
+        "-j <threads>         --  number of threads used to inspect files; 0 - number of available processors. Files are inspected sequentially by default. \n" +
+        "-stream              --  apply fixes to each file right after it is inspected instead of collecting all problems first \n" +
+        "-cache <file>        --  file with results of previous runs; inspections which found nothing in unchanged files are not rerun \n" +
+        "-localPass shared|perTool|benchmark -- run local inspections of a file in one traversal, one by one (default) or compare both \n" +
+        "-baselineProfile <profile> -- name or path of the previous version of the profile; only inspections with changed settings are run \n" +
+        "-since <revision>    --  inspect and fix only files changed in git since the revision, run only tests which they can affect \n" +
+        "-costs <file>        --  file with costs of inspections measured in previous runs; expensive inspections are run first, cheap ones together (not with -stream) \n" +
+        "-workspace link|copy --  how the project is copied before fixes are applied: hard links to unchanged source files or full copy (default); \n" +
+        "                         build outputs (target, out, build, module outputs) are always copied, cloned with cp --reflink where supported \n" +
+        "-exclude <glob>      --  path relative to the project root which is not copied (e.g. .git, **/target); can be repeated \n" +
+        "-bisect              --  if fixes break the project, find the inspections responsible for it by bisection \n" +
+        "-affectedTests       --  after fixes are applied, run only test classes which depend on modified classes \n" +
+        "-testParallel fixed:<n>|dynamic[:<factor>] -- run JUnit Jupiter tests in parallel with the given strategy; requires Jupiter 5.3+ \n" +
+        "                         and junit-platform-launcher in the test dependencies of the project, not supported with -maven \n" +
+        "-testShards <n>      --  split test classes between n test runners with separate class loaders \n" +
+        "-stats <file>        --  print time, problems and errors of every inspection and file and write them to the file (.csv or JSON) \n" +
+        "-freshClassLoaders   --  load test libraries again for every test run instead of reusing them \n" +
+        "-mavenExecutable <path> -- command used to run Maven goals, e.g. mvnd to keep a warm Maven daemon (default: mvn) \n" +
+        "-incrementalBuild    --  with -maven, build modules modified by fixes, their dependents and dependencies without clean, test only modified modules and dependents \n" +
+        "-mavenTimeout <minutes> -- kill a Maven goal which runs longer than this \n" +
         "-profileName         --  name of a profile defined in project \n " +
         "-profilePath         --  absolute path to the profile file";
         System.out.println(help);
@@ -1,19 +1,28 @@
 package inspectionTest;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 
 public class JUnitRunner {
+    // JUnit Platform and libraries are loaded once and shared by all runs with the same class path,
+    // so that only classes of the project are loaded (and warmed up) again
+    private static URLClassLoader warmParent;
+    private static List<URL> warmParentURLs;
+
     private List<URL> urls;
+    // output directories of the project, they are reloaded by every run
+    private List<URL> projectURLs = new ArrayList<>();
+    private boolean reuseParentClassLoader = true;
     private List<String> testClassNames;
+    private Map<String, String> configurationParameters = new HashMap<>();
+    private int shardsCount = 1;
     private boolean isRunning = false;
-    Object threadObject;
-    Class<?> threadClass;
+    // every shard runs in its own JUnitThread loaded by its own class loader
+    List<Object> threadObjects = new ArrayList<>();
 
     public JUnitRunner(){
         initURLS();
@@ -31,22 +40,91 @@ public class JUnitRunner {
         this.urls.addAll(urls);
     }
 
-    public int getFailuresCount() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-        Method method = threadClass.getMethod("join", null);
-        method.invoke(threadObject, null);
+    public void addProjectURLs(List<URL> urls) {
+        projectURLs.addAll(urls);
+    }
+
+    public void setReuseParentClassLoader(boolean reuseParentClassLoader) {
+        this.reuseParentClassLoader = reuseParentClassLoader;
+    }
 
-        method = threadClass.getMethod("getFailuresCount", null);
-        int failuresCount = (int) method.invoke(threadObject, null);
+    public int getFailuresCount() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+        join();
+
+        int failuresCount = 0;
+        long[] counts = new long[4];
+        for (Object threadObject : threadObjects) {
+            Method method = threadObject.getClass().getMethod("getFailuresCount", null);
+            failuresCount += (int) method.invoke(threadObject, null);
+
+            method = threadObject.getClass().getMethod("getSummaryCounts", null);
+            long[] threadCounts = (long[]) method.invoke(threadObject, null);
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += threadCounts[i];
+            }
+        }
+        if (threadObjects.size() > 1) {
+            System.out.println("Tests finished with " + failuresCount + " failures in " + threadObjects.size() + " shards. Tests run: " +
+                    counts[0] + ", succeeded: " + counts[1] + ", failed: " + counts[2] + ", skipped: " + counts[3]);
+        }
         isRunning = false;
 
         return failuresCount;
     }
 
+    public TestOutcomes getTestOutcomes() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+        join();
+
+        TestOutcomes outcomes = new TestOutcomes();
+        for (Object threadObject : threadObjects) {
+            Method method = threadObject.getClass().getMethod("getTestOutcomes", null);
+            outcomes.addAll((List<String[]>) method.invoke(threadObject, null));
+        }
+        return outcomes;
+    }
+
+    private void join() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+        for (Object threadObject : threadObjects) {
+            Method method = threadObject.getClass().getMethod("join", null);
+            method.invoke(threadObject, null);
+        }
+    }
+
     public void startThread() throws Exception {
-        URLClassLoader ucl = new URLClassLoader(urls.toArray(new URL[urls.size()]));
+        if (testClassNames.isEmpty()) {
+            // nothing to run, results are empty
+            System.out.println("No test classes to run");
+            return;
+        }
+        List<List<String>> shards = new ArrayList<>();
+        int count = Math.max(1, Math.min(shardsCount, testClassNames.size()));
+        for (int i = 0; i < count; i++) {
+            shards.add(new ArrayList<>());
+        }
+        List<String> sortedNames = new ArrayList<>(testClassNames);
+        Collections.sort(sortedNames);
+        for (int i = 0; i < sortedNames.size(); i++) {
+            shards.get(i % shards.size()).add(sortedNames.get(i));
+        }
+
+        for (int i = 0; i < shards.size(); i++) {
+            startThread(shards.get(i), shards.size() > 1 ? "JUnitThread-" + i : "JUnitThread");
+        }
+        isRunning = true;
+    }
+
+    private void startThread(List<String> classNames, String name) throws Exception {
+        URLClassLoader ucl;
+        if (reuseParentClassLoader) {
+            ucl = new URLClassLoader(projectURLs.toArray(new URL[projectURLs.size()]), getWarmParent(urls));
+        } else {
+            List<URL> allURLs = new ArrayList<>(urls);
+            allURLs.addAll(projectURLs);
+            ucl = new URLClassLoader(allURLs.toArray(new URL[allURLs.size()]));
+        }
 
-        threadClass = ucl.loadClass("inspectionTest.JUnitThread");
-        threadObject = threadClass.newInstance();
+        Class<?> threadClass = ucl.loadClass("inspectionTest.JUnitThread");
+        Object threadObject = threadClass.newInstance();
 
 
         Method method = threadClass.getMethod("setClassLoader", new Class[]{URLClassLoader.class});
@@ -54,17 +132,49 @@ public class JUnitRunner {
 
 
         method = threadClass.getMethod("setTestClassNames", new Class[]{List.class});
-        method.invoke(threadObject, new Object[]{testClassNames});
+        method.invoke(threadObject, new Object[]{classNames});
+
+        method = threadClass.getMethod("setConfigurationParameters", new Class[]{Map.class});
+        method.invoke(threadObject, new Object[]{configurationParameters});
+
+        method = threadClass.getMethod("setName", new Class[]{String.class});
+        method.invoke(threadObject, new Object[]{name});
 
         method = threadClass.getMethod("setContextClassLoader", new Class[]{ClassLoader.class});
         method.invoke(threadObject, new Object[]{ucl});
 
         method = threadClass.getMethod("start", null);
         method.invoke(threadObject, null);
-        isRunning = true;
+        threadObjects.add(threadObject);
+    }
+
+    private static synchronized URLClassLoader getWarmParent(List<URL> urls) {
+        if (warmParent == null || !warmParentURLs.equals(urls)) {
+            if (warmParent != null) {
+                System.out.println("Test class path has changed, test libraries are loaded again");
+                // runs are sequential, so no test uses the old libraries any more; closing releases their jar handles
+                try {
+                    warmParent.close();
+                } catch (IOException e) {
+                    System.err.println("Cannot close the test class loader: " + e.getMessage());
+                }
+            }
+            warmParent = new URLClassLoader(urls.toArray(new URL[urls.size()]));
+            warmParentURLs = new ArrayList<>(urls);
+        }
+        return warmParent;
     }
 
     public void setTestClassNames(List<String> testClassNames) {
         this.testClassNames = testClassNames;
     }
+
+    public void setShardsCount(int shardsCount) {
+        this.shardsCount = shardsCount;
+    }
+
+    // JUnit Platform configuration parameters, e.g. for parallel execution
+    public void setConfigurationParameters(Map<String, String> configurationParameters) {
+        this.configurationParameters = configurationParameters;
+    }
 }
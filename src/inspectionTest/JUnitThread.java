@@ -2,8 +2,14 @@ package inspectionTest;
 
 import org.apache.maven.surefire.util.DirectoryScanner;
 import org.junit.platform.engine.DiscoverySelector;
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.descriptor.MethodSource;
 import org.junit.platform.launcher.Launcher;
 import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
 import org.junit.platform.launcher.TestPlan;
 import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
 import org.junit.platform.launcher.core.LauncherFactory;
@@ -11,8 +17,8 @@ import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
 import org.junit.platform.launcher.listeners.TestExecutionSummary;
 
 import java.net.URLClassLoader;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
 
@@ -21,6 +27,9 @@ public class JUnitThread extends Thread {
     private List<String> testClassNames;
     private List<Class> testClasses;
     private int failuresCount;
+    private List<String[]> testOutcomes = Collections.synchronizedList(new ArrayList<>());
+    private Map<String, String> configurationParameters = new HashMap<>();
+    private long[] summaryCounts = new long[4];
 
     public JUnitThread(){
         super("JUnitThread");
@@ -35,6 +44,10 @@ public class JUnitThread extends Thread {
         this.testClassNames = testClassNames;
     }
 
+    public void setConfigurationParameters(Map<String, String> configurationParameters) {
+        this.configurationParameters = configurationParameters;
+    }
+
     private void loadTestClasses() throws ClassNotFoundException {
         for (String className : testClassNames) {
             if (className.contains("Test"))
@@ -47,11 +60,16 @@ public class JUnitThread extends Thread {
     public void run() {
         try {
             loadTestClasses();
+            if (testClasses.isEmpty()) {
+                System.out.println("No test classes to run");
+                return;
+            }
             List<DiscoverySelector> selectorList = new ArrayList<>();
             for (Class c : testClasses) {
                 selectorList.add(selectClass(c));
             }
-            LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request().selectors(selectorList).build();
+            LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request().selectors(selectorList)
+                    .configurationParameters(configurationParameters).build();
 
             Launcher launcher = LauncherFactory.create();
             ClassLoader context = Thread.currentThread().getContextClassLoader();
@@ -60,12 +78,14 @@ public class JUnitThread extends Thread {
             final SummaryGeneratingListener listener = new SummaryGeneratingListener();
 
             TestPlan testPlan = launcher.discover(request);
-            launcher.registerTestExecutionListeners(listener);
+            launcher.registerTestExecutionListeners(listener, new OutcomeListener());
             launcher.execute(request);
 
             TestExecutionSummary summary = listener.getSummary();
 
             failuresCount = (int) summary.getTestsFailedCount();
+            summaryCounts = new long[]{summary.getTestsStartedCount(), summary.getTestsSucceededCount(),
+                    summary.getTestsFailedCount(), summary.getTestsSkippedCount()};
             System.out.println("Tests finished with " + failuresCount + " failures.");
 
         } catch (ClassNotFoundException e) {
@@ -77,4 +97,59 @@ public class JUnitThread extends Thread {
     public int getFailuresCount() {
         return failuresCount;
     }
+
+    // tests started, succeeded, failed and skipped
+    public long[] getSummaryCounts() {
+        return summaryCounts;
+    }
+
+    // test id, status (PASSED, FAILED or SKIPPED) and duration in milliseconds of every test;
+    // only JDK classes are returned because this thread is loaded by another class loader than the plugin
+    public List<String[]> getTestOutcomes() {
+        return testOutcomes;
+    }
+
+    private class OutcomeListener implements TestExecutionListener {
+        private final Map<String, Long> startTimes = new ConcurrentHashMap<>();
+
+        @Override
+        public void executionStarted(TestIdentifier testIdentifier) {
+            startTimes.put(testIdentifier.getUniqueId(), System.nanoTime());
+        }
+
+        @Override
+        public void executionSkipped(TestIdentifier testIdentifier, String reason) {
+            if (testIdentifier.isTest()) {
+                addOutcome(testIdentifier, "SKIPPED", 0);
+            }
+        }
+
+        @Override
+        public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+            Long start = startTimes.remove(testIdentifier.getUniqueId());
+            long time = start == null ? 0 : (System.nanoTime() - start) / 1000000;
+            TestExecutionResult.Status status = testExecutionResult.getStatus();
+
+            if (testIdentifier.isTest()) {
+                addOutcome(testIdentifier, status == TestExecutionResult.Status.SUCCESSFUL ? "PASSED" :
+                        status == TestExecutionResult.Status.FAILED ? "FAILED" : "SKIPPED", time);
+            } else if (status == TestExecutionResult.Status.FAILED) {
+                // e.g. failed @BeforeAll, tests of the class are not reported then
+                addOutcome(testIdentifier, "FAILED", time);
+            }
+        }
+
+        private void addOutcome(TestIdentifier testIdentifier, String status, long time) {
+            TestSource source = testIdentifier.getSource().orElse(null);
+            String id;
+            if (source instanceof MethodSource) {
+                id = ((MethodSource) source).getClassName() + "#" + testIdentifier.getLegacyReportingName();
+            } else if (source instanceof ClassSource) {
+                id = ((ClassSource) source).getClassName() + "#" + testIdentifier.getLegacyReportingName();
+            } else {
+                id = testIdentifier.getUniqueId();
+            }
+            testOutcomes.add(new String[]{id, status, String.valueOf(time)});
+        }
+    }
 }
@@ -0,0 +1,96 @@
+package inspectionTest;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.InspectionEngine;
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.codeInspection.ex.LocalInspectionToolWrapper;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.psi.PsiFile;
+
+import java.util.*;
+import java.util.function.Function;
+
+// Compares running local inspections one by one (a traversal of the file per inspection)
+// with running them in a single shared traversal. Files are inspected in both ways in alternating order,
+// so that neither way profits from caches warmed up by the other one.
+public class LocalInspectionBenchmark {
+    private final Map<String, Integer> myPerToolProblems = new HashMap<>();
+    private final Map<String, Integer> mySharedProblems = new HashMap<>();
+    private long myPerToolNanos;
+    private long mySharedNanos;
+    private final Set<String> myToolNames = new HashSet<>();
+    private int myFilesCount;
+    private long myInvocations;
+
+    // wrappersOfFile gives the tools which the inspection run would apply to a file
+    public void run(List<PsiFile> files, Function<PsiFile, List<LocalInspectionToolWrapper>> wrappersOfFile,
+                    GlobalInspectionContext context) {
+        for (PsiFile file : files) {
+            List<LocalInspectionToolWrapper> wrappers = wrappersOfFile.apply(file);
+            if (wrappers.isEmpty()) continue;
+            for (LocalInspectionToolWrapper wrapper : wrappers) {
+                myToolNames.add(wrapper.getShortName());
+            }
+            myInvocations += wrappers.size();
+            if (myFilesCount++ % 2 == 0) {
+                runPerTool(file, wrappers, context);
+                runShared(file, wrappers);
+            } else {
+                runShared(file, wrappers);
+                runPerTool(file, wrappers, context);
+            }
+        }
+        print();
+    }
+
+    private void runPerTool(PsiFile file, List<LocalInspectionToolWrapper> wrappers, GlobalInspectionContext context) {
+        long start = System.nanoTime();
+        for (LocalInspectionToolWrapper wrapper : wrappers) {
+            try {
+                List<ProblemDescriptor> problems = InspectionEngine.runInspectionOnFile(file, wrapper, context);
+                myPerToolProblems.merge(wrapper.getShortName(), problems.size(), Integer::sum);
+            } catch (ProcessCanceledException e) {
+                throw e;
+            } catch (Throwable e) {
+                // counted as no problems, like in the inspection run
+            }
+        }
+        myPerToolNanos += System.nanoTime() - start;
+    }
+
+    private void runShared(PsiFile file, List<LocalInspectionToolWrapper> wrappers) {
+        long start = System.nanoTime();
+        for (Map.Entry<String, List<ProblemDescriptor>> entry : new LocalInspectionPass(file).run(wrappers).entrySet()) {
+            mySharedProblems.merge(entry.getKey(), entry.getValue().size(), Integer::sum);
+        }
+        mySharedNanos += System.nanoTime() - start;
+    }
+
+    private void print() {
+        long perToolMs = myPerToolNanos / 1000000;
+        long sharedMs = mySharedNanos / 1000000;
+        System.out.println("Local inspection benchmark, " + myToolNames.size() + " inspections on " + myFilesCount + " files (" +
+                myInvocations + " tool invocations):");
+        System.out.println("  one by one:    " + perToolMs + " ms, " + sum(myPerToolProblems) + " problems");
+        System.out.println("  shared pass:   " + sharedMs + " ms, " + sum(mySharedProblems) + " problems");
+        System.out.println("  speedup:       " + String.format("%.2f", sharedMs == 0 ? 1.0 : (double) perToolMs / sharedMs) + "x");
+
+        Set<String> toolNames = new TreeSet<>(myPerToolProblems.keySet());
+        toolNames.addAll(mySharedProblems.keySet());
+        for (String toolName : toolNames) {
+            int perTool = myPerToolProblems.getOrDefault(toolName, 0);
+            int shared = mySharedProblems.getOrDefault(toolName, 0);
+            if (perTool != shared) {
+                System.out.println("  different results of " + toolName + ": " + perTool + " one by one, " + shared + " in shared pass");
+            }
+        }
+    }
+
+    private static int sum(Map<String, Integer> counts) {
+        int sum = 0;
+        for (int count : counts.values()) {
+            sum += count;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,127 @@
+package inspectionTest;
+
+import com.intellij.codeInspection.*;
+import com.intellij.codeInspection.ex.LocalInspectionToolWrapper;
+import com.intellij.lang.Language;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiElementVisitor;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiRecursiveElementWalkingVisitor;
+
+import java.util.*;
+
+// Runs local inspections on a file in one traversal of its PSI tree, like the daemon does in the editor:
+// visitors of all inspections are built first and every element is passed to each of them.
+// An inspection which throws is stopped for the rest of the file, results of the others are kept.
+public class LocalInspectionPass {
+    private final PsiFile myFile;
+    private final InspectionManager myManager;
+    private final Map<String, Throwable> myFailures = new LinkedHashMap<>();
+
+    public LocalInspectionPass(PsiFile file) {
+        myFile = file;
+        myManager = InspectionManager.getInstance(file.getProject());
+    }
+
+    // problems of every inspection by its short name
+    public Map<String, List<ProblemDescriptor>> run(List<LocalInspectionToolWrapper> wrappers) {
+        List<Runner> runners = new ArrayList<>();
+        for (LocalInspectionToolWrapper wrapper : wrappers) {
+            Runner runner = new Runner(wrapper);
+            if (call(runner, runner::start) && runner.myVisitor != PsiElementVisitor.EMPTY_VISITOR) {
+                runners.add(runner);
+            }
+        }
+
+        if (!runners.isEmpty()) {
+            PsiRecursiveElementWalkingVisitor visitor = new PsiRecursiveElementWalkingVisitor() {
+                @Override
+                public void visitElement(PsiElement element) {
+                    Language language = element.getLanguage();
+                    for (Runner runner : runners) {
+                        if (!runner.myFailed && runner.accepts(language)) {
+                            call(runner, () -> element.accept(runner.myVisitor));
+                        }
+                    }
+                    super.visitElement(element);
+                }
+            };
+            // multi-language files (JSP, HTML with scripts) have a tree per language, InspectionEngine.inspectEx visits all of them
+            for (PsiFile root : myFile.getViewProvider().getAllFiles()) {
+                root.accept(visitor);
+            }
+        }
+
+        Map<String, List<ProblemDescriptor>> results = new LinkedHashMap<>();
+        for (Runner runner : runners) {
+            if (!runner.myFailed) {
+                call(runner, runner::finish);
+            }
+            results.put(runner.myWrapper.getShortName(), runner.getResults());
+        }
+        return results;
+    }
+
+    // inspections which failed on the file and their exceptions
+    public Map<String, Throwable> getFailures() {
+        return myFailures;
+    }
+
+    private boolean call(Runner runner, Runnable action) {
+        try {
+            action.run();
+            return true;
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (Throwable e) {
+            runner.myFailed = true;
+            myFailures.put(runner.myWrapper.getShortName(), e);
+            return false;
+        }
+    }
+
+    private class Runner {
+        private final LocalInspectionToolWrapper myWrapper;
+        private final LocalInspectionTool myTool;
+        private final Language myLanguage;
+        private ProblemsHolder myHolder;
+        private LocalInspectionToolSession mySession;
+        private PsiElementVisitor myVisitor;
+        private boolean myFailed;
+
+        private Runner(LocalInspectionToolWrapper wrapper) {
+            myWrapper = wrapper;
+            myTool = wrapper.getTool();
+            myLanguage = wrapper.getLanguage() != null ? Language.findLanguageByID(wrapper.getLanguage()) : null;
+        }
+
+        private void start() {
+            myHolder = new ProblemsHolder(myManager, myFile, false);
+            mySession = new LocalInspectionToolSession(myFile, 0, myFile.getTextLength());
+            myTool.inspectionStarted(mySession, false);
+            myVisitor = myTool.buildVisitor(myHolder, false, mySession);
+        }
+
+        private boolean accepts(Language language) {
+            return myLanguage == null || language.is(myLanguage) || myWrapper.applyToDialects() && language.isKindOf(myLanguage);
+        }
+
+        private void finish() {
+            myTool.inspectionFinished(mySession, myHolder);
+        }
+
+        private List<ProblemDescriptor> getResults() {
+            List<ProblemDescriptor> problems = new ArrayList<>();
+            // like a failed inspection run on its own, partial results are dropped
+            if (myHolder == null || myFailed) return problems;
+            for (ProblemDescriptor problem : myHolder.getResults()) {
+                PsiElement element = problem.getPsiElement();
+                if (element == null || !myTool.isSuppressedFor(element)) {
+                    problems.add(problem);
+                }
+            }
+            return problems;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package inspectionTest;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Class path of dependencies resolved from the local repository by walking the dependency graph,
+// the nearest version of an artifact wins like in Maven. Artifacts are written as "groupId:artifactId:version[:classifier]".
+// Dependencies of every artifact are kept in a persisted index which is checked against timestamps of poms,
+// so that poms are parsed only the first time. Exclusions and version ranges are not supported.
+public class MavenDependencyResolver {
+    private static final int VERSION = 1;
+    private static final Pattern PROPERTY = Pattern.compile("\\$\\{([^}]+)}");
+
+    private final File myLocalRepository;
+    private final File myIndexFile;
+    // "groupId:artifactId:version" -> compile and runtime dependencies of the artifact
+    private final Map<String, List<String>> myIndex = new HashMap<>();
+    private final Map<String, Long> myPomTimestamps = new HashMap<>();
+    private final Map<String, Pom> myParsedPoms = new HashMap<>();
+    private DocumentBuilder myDocumentBuilder;
+    private boolean myChanged;
+    private int myMissingCount;
+    private int myParsedCount;
+
+    public MavenDependencyResolver(File localRepository, File indexFile) {
+        myLocalRepository = localRepository;
+        myIndexFile = indexFile;
+    }
+
+    public void load() {
+        if (!myIndexFile.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myIndexFile)))) {
+            // the index is valid only for the repository it was built from
+            if (in.readInt() != VERSION || !in.readUTF().equals(myLocalRepository.getAbsolutePath())) return;
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String artifact = in.readUTF();
+                myPomTimestamps.put(artifact, in.readLong());
+                int dependenciesCount = in.readInt();
+                List<String> dependencies = new ArrayList<>(dependenciesCount);
+                for (int j = 0; j < dependenciesCount; j++) {
+                    dependencies.add(in.readUTF());
+                }
+                myIndex.put(artifact, dependencies);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read Maven dependency index " + myIndexFile + ": " + e.getMessage());
+            myIndex.clear();
+            myPomTimestamps.clear();
+        }
+    }
+
+    public void save() {
+        if (!myChanged) return;
+
+        myIndexFile.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myIndexFile)))) {
+            out.writeInt(VERSION);
+            out.writeUTF(myLocalRepository.getAbsolutePath());
+            out.writeInt(myIndex.size());
+            for (Map.Entry<String, List<String>> entry : myIndex.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(myPomTimestamps.get(entry.getKey()));
+                out.writeInt(entry.getValue().size());
+                for (String dependency : entry.getValue()) {
+                    out.writeUTF(dependency);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write Maven dependency index " + myIndexFile + ": " + e.getMessage());
+        }
+    }
+
+    // jars of the given direct dependencies and of their transitive dependencies,
+    // artifacts with excluded "groupId:artifactId" keys (e.g. modules of the project itself) are skipped
+    public List<File> resolve(List<String> directDependencies, Set<String> excludedKeys) {
+        List<File> jars = new ArrayList<>();
+        Set<String> visitedKeys = new HashSet<>(excludedKeys);
+        // breadth-first, so the first version of an artifact is the nearest one
+        Deque<String> queue = new ArrayDeque<>(directDependencies);
+
+        while (!queue.isEmpty()) {
+            String artifact = queue.poll();
+            String[] parts = artifact.split(":");
+            String key = parts.length > 3 ? parts[0] + ":" + parts[1] + ":" + parts[3] : parts[0] + ":" + parts[1];
+            if (!visitedKeys.add(key)) continue;
+
+            File jar = getArtifactFile(parts, "jar");
+            if (jar.exists()) {
+                jars.add(jar);
+            } else if (!getArtifactFile(parts, "pom").exists()) {
+                myMissingCount++;
+            }
+            queue.addAll(getDependencies(parts[0] + ":" + parts[1] + ":" + parts[2]));
+        }
+
+        return jars;
+    }
+
+    public int getMissingCount() {
+        return myMissingCount;
+    }
+
+    public int getParsedPomsCount() {
+        return myParsedCount;
+    }
+
+    private List<String> getDependencies(String artifact) {
+        File pomFile = getArtifactFile(artifact.split(":"), "pom");
+        long timestamp = pomFile.lastModified();
+        List<String> dependencies = myIndex.get(artifact);
+        if (dependencies != null && myPomTimestamps.get(artifact) == timestamp) {
+            return dependencies;
+        }
+
+        dependencies = new ArrayList<>();
+        Pom pom = getPom(artifact);
+        if (pom != null) {
+            for (String[] dependency : pom.myDependencies) {
+                String scope = dependency[3];
+                // test and provided dependencies of dependencies are not needed, like in Maven
+                if (scope != null && !"compile".equals(scope) && !"runtime".equals(scope)) continue;
+                if ("true".equals(dependency[6]) || dependency[2] == null) continue;
+                dependencies.add(toArtifact(dependency));
+            }
+        }
+        myIndex.put(artifact, dependencies);
+        myPomTimestamps.put(artifact, timestamp);
+        myChanged = true;
+
+        return dependencies;
+    }
+
+    // pom with inherited properties, managed versions and dependencies of its parents
+    private Pom getPom(String artifact) {
+        if (myParsedPoms.containsKey(artifact)) return myParsedPoms.get(artifact);
+        // a cyclic parent reference is resolved as a missing pom
+        myParsedPoms.put(artifact, null);
+
+        File pomFile = getArtifactFile(artifact.split(":"), "pom");
+        if (!pomFile.exists()) return null;
+
+        Pom pom = new Pom();
+        try {
+            if (myDocumentBuilder == null) {
+                myDocumentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            }
+            Document document = myDocumentBuilder.parse(pomFile);
+            Element project = document.getDocumentElement();
+
+            Element parent = getChild(project, "parent");
+            Pom parentPom = null;
+            if (parent != null) {
+                parentPom = getPom(getChildText(parent, "groupId") + ":" + getChildText(parent, "artifactId") + ":" + getChildText(parent, "version"));
+            }
+            if (parentPom != null) {
+                pom.myProperties.putAll(parentPom.myProperties);
+                pom.myManagedVersions.putAll(parentPom.myManagedVersions);
+                pom.myDependencies.addAll(parentPom.myDependencies);
+            }
+
+            String[] parts = artifact.split(":");
+            pom.myProperties.put("project.groupId", parts[0]);
+            pom.myProperties.put("project.artifactId", parts[1]);
+            pom.myProperties.put("project.version", parts[2]);
+            pom.myProperties.put("pom.version", parts[2]);
+            pom.myProperties.put("version", parts[2]);
+            if (parent != null) {
+                pom.myProperties.put("project.parent.version", getChildText(parent, "version"));
+            }
+            Element properties = getChild(project, "properties");
+            if (properties != null) {
+                for (Element property : getChildren(properties, null)) {
+                    pom.myProperties.put(property.getTagName(), property.getTextContent().trim());
+                }
+            }
+
+            Element dependencyManagement = getChild(project, "dependencyManagement");
+            for (String[] managed : readDependencies(dependencyManagement, pom)) {
+                if ("import".equals(managed[3])) {
+                    Pom bom = getPom(managed[0] + ":" + managed[1] + ":" + managed[2]);
+                    if (bom != null) {
+                        for (Map.Entry<String, String> entry : bom.myManagedVersions.entrySet()) {
+                            pom.myManagedVersions.putIfAbsent(entry.getKey(), entry.getValue());
+                        }
+                    }
+                } else {
+                    pom.myManagedVersions.put(managed[0] + ":" + managed[1], managed[2]);
+                }
+            }
+
+            for (String[] dependency : readDependencies(project, pom)) {
+                if (dependency[2] == null) {
+                    dependency[2] = pom.myManagedVersions.get(dependency[0] + ":" + dependency[1]);
+                }
+                pom.myDependencies.removeIf(inherited -> inherited[0].equals(dependency[0]) && inherited[1].equals(dependency[1]));
+                pom.myDependencies.add(dependency);
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to read " + pomFile + ": " + e.getMessage());
+            return null;
+        }
+
+        myParsedPoms.put(artifact, pom);
+        myParsedCount++;
+        return pom;
+    }
+
+    // groupId, artifactId, version, scope, type, classifier and optional of dependencies in the given element
+    private static List<String[]> readDependencies(Element element, Pom pom) {
+        List<String[]> result = new ArrayList<>();
+        Element dependencies = element == null ? null : getChild(element, "dependencies");
+        if (dependencies == null) return result;
+
+        for (Element dependency : getChildren(dependencies, "dependency")) {
+            String[] values = new String[7];
+            String[] names = {"groupId", "artifactId", "version", "scope", "type", "classifier", "optional"};
+            for (int i = 0; i < names.length; i++) {
+                String text = getChildText(dependency, names[i]);
+                values[i] = text == null ? null : interpolate(text, pom.myProperties);
+            }
+            result.add(values);
+        }
+        return result;
+    }
+
+    private static String toArtifact(String[] dependency) {
+        String classifier = "test-jar".equals(dependency[4]) ? "tests" : dependency[5];
+        return dependency[0] + ":" + dependency[1] + ":" + dependency[2] + (classifier != null ? ":" + classifier : "");
+    }
+
+    private File getArtifactFile(String[] parts, String extension) {
+        String classifier = "jar".equals(extension) && parts.length > 3 ? "-" + parts[3] : "";
+        return new File(myLocalRepository, parts[0].replace('.', File.separatorChar) + File.separator + parts[1] + File.separator +
+                parts[2] + File.separator + parts[1] + "-" + parts[2] + classifier + "." + extension);
+    }
+
+    private static String interpolate(String text, Map<String, String> properties) {
+        // properties can refer to other properties
+        for (int depth = 0; depth < 10 && text.contains("${"); depth++) {
+            Matcher matcher = PROPERTY.matcher(text);
+            StringBuffer result = new StringBuffer();
+            while (matcher.find()) {
+                String value = properties.get(matcher.group(1));
+                matcher.appendReplacement(result, Matcher.quoteReplacement(value != null ? value : matcher.group()));
+            }
+            matcher.appendTail(result);
+            if (result.toString().equals(text)) break;
+            text = result.toString();
+        }
+        return text;
+    }
+
+    private static Element getChild(Element element, String name) {
+        List<Element> children = getChildren(element, name);
+        return children.isEmpty() ? null : children.get(0);
+    }
+
+    private static String getChildText(Element element, String name) {
+        Element child = getChild(element, name);
+        return child == null ? null : child.getTextContent().trim();
+    }
+
+    private static List<Element> getChildren(Element element, String name) {
+        List<Element> children = new ArrayList<>();
+        NodeList nodes = element.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node instanceof Element && (name == null || name.equals(((Element) node).getTagName()))) {
+                children.add((Element) node);
+            }
+        }
+        return children;
+    }
+
+    private static class Pom {
+        private final Map<String, String> myProperties = new HashMap<>();
+        // "groupId:artifactId" -> version
+        private final Map<String, String> myManagedVersions = new HashMap<>();
+        private final List<String[]> myDependencies = new ArrayList<>();
+    }
+}
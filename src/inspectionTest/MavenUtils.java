@@ -1,13 +1,12 @@
 package inspectionTest;
 
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
-import org.apache.maven.plugins.surefire.report.ReportTestSuite;
-import org.apache.maven.plugins.surefire.report.SurefireReportParser;
-import org.apache.maven.reporting.MavenReportException;
+import org.jetbrains.idea.maven.model.MavenArtifact;
 import org.jetbrains.idea.maven.model.MavenExplicitProfiles;
 import org.jetbrains.idea.maven.model.MavenId;
 import org.jetbrains.idea.maven.project.*;
@@ -34,6 +33,17 @@ public class MavenUtils {
     Lock myStructureWriteLock = myStructureLock.writeLock();
     Project myProject;
     VirtualFile myProjectPath;
+    private TestOutcomes myTestOutcomes = new TestOutcomes();
+    private ProjectScanner myLastScan;
+    // directories of modules relative to the project root, "" for the root module
+    private final List<String> myModulePaths = new ArrayList<>();
+    private String myMavenExecutable = "mvn";
+    private final List<String> myGoalTimes = new ArrayList<>();
+    private long myGoalsTime;
+    private long myGoalTimeout;
+    private volatile ExecCommand myRunningCommand;
+    // reports older than this are left from earlier runs
+    private long myTestsStart;
 
     public MavenUtils(Project project, VirtualFile projectPath) {
         myProject = project;
@@ -82,76 +92,97 @@ public class MavenUtils {
         List<File> pomFiles = findAllPomFiles(myProjectPath.getPath());
         List<MavenProjectReaderResult> projects = new ArrayList<>();
 
+        Path root = Paths.get(myProjectPath.getPath());
+        myModulePaths.clear();
         for (File f: pomFiles) {
             projects.add(getMavenProject(LocalFileSystem.getInstance().findFileByPath(f.getPath())));
+            myModulePaths.add(root.relativize(f.getParentFile().toPath()).toString().replace(File.separatorChar, '/'));
         }
 
         return projects;
     }
 
-    // not really efficient
+    // jars of dependencies of all modules of the project, including transitive ones
     public List<URL> getAllMavenDependecies() {
+        long start = System.currentTimeMillis();
         List<URL> urls = new ArrayList<>();
         File localRepository = MavenUtil.resolveLocalRepository(null, null, null);
-        List<File> allFiles = getAllFilesRecursively(localRepository);
-
-        for (File file : allFiles) {
-            if (file.getName().endsWith("jar")) {
-                try {
-                    urls.add(file.toURI().toURL());
-                } catch (MalformedURLException e) {
-                    e.printStackTrace();
-                }
+        MavenDependencyResolver resolver = new MavenDependencyResolver(localRepository,
+                new File(PathManager.getSystemPath(), "inspectionTest" + File.separator + "maven-dependencies.idx"));
+        resolver.load();
+
+        List<String> directDependencies = new ArrayList<>();
+        Set<String> moduleKeys = new HashSet<>();
+        for (MavenProjectReaderResult project : getAllProjects()) {
+            MavenId id = project.mavenModel.getMavenId();
+            moduleKeys.add(id.getGroupId() + ":" + id.getArtifactId());
+            for (MavenArtifact dependency : project.mavenModel.getDependencies()) {
+                if (dependency.getVersion() == null || "system".equals(dependency.getScope())) continue;
+                String classifier = "test-jar".equals(dependency.getType()) ? "tests" : dependency.getClassifier();
+                directDependencies.add(dependency.getGroupId() + ":" + dependency.getArtifactId() + ":" + dependency.getVersion() +
+                        (classifier != null && !classifier.isEmpty() ? ":" + classifier : ""));
             }
         }
 
-        return urls;
-    }
-
-    private List<File> getAllFilesRecursively(File directory) {
-        return getAllFilesRecursively(directory, true);
-    }
-
-    // if onlyFiles == true, then no directories will be return and vice versa
-    private List<File> getAllFilesRecursively(File directory, boolean onlyFiles) {
-        List<File> files = new ArrayList<>();
-        List<File> subdirectories = new ArrayList<>();
-        File[] filesArray = directory.listFiles();
-        if (filesArray != null && filesArray.length != 0) {
-            for (File f : filesArray) {
-                if (!f.isDirectory() && onlyFiles) {
-                    files.add(f);
-                }
-                if (f.isDirectory()) {
-                    subdirectories.add(f);
-                    if (!onlyFiles)
-                        files.add(f);
-                }
+        for (File jar : resolver.resolve(directDependencies, moduleKeys)) {
+            try {
+                urls.add(jar.toURI().toURL());
+            } catch (MalformedURLException e) {
+                e.printStackTrace();
             }
         }
+        resolver.save();
+        System.out.println("Resolved " + urls.size() + " Maven dependencies in " + (System.currentTimeMillis() - start) + " ms (" +
+                resolver.getParsedPomsCount() + " poms parsed, " + resolver.getMissingCount() + " artifacts missing in the local repository)");
 
-        if (!subdirectories.isEmpty()) {
-            for (File subdirectory : subdirectories) {
-                files.addAll(getAllFilesRecursively(subdirectory, onlyFiles));
-            }
-        }
+        return urls;
+    }
 
-        return files;
+    // returns false if the build failed
+    public boolean mavenCompile(String projectPath) throws InterruptedException, IOException {
+        try {
+            return runMavenGoal("clean install -DskipTests=true", projectPath, true) == 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        return false;
     }
 
-    public void mavenCompile(String projectPath) throws InterruptedException, IOException {
+    // builds only the given modules and modules depending on them, without clean
+    public boolean mavenCompile(String projectPath, Collection<String> modulePaths) {
         try {
-            runMavenGoal("clean install -DskipTests=true", projectPath, true);
+            return runMavenGoal("install -DskipTests=true" + getProjectList(modulePaths), projectPath, true) == 0;
         } catch (IOException e) {
             e.printStackTrace();
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
+        return false;
     }
 
     public void runTests(String projectPath) {
+        runTests(projectPath, null);
+    }
+
+    // runs only the given test classes if testClassNames is not null
+    public void runTests(String projectPath, Collection<String> testClassNames) {
+        runTests(projectPath, testClassNames, null);
+    }
+
+    // runs tests only in the given modules and modules depending on them if modulePaths is not null
+    public void runTests(String projectPath, Collection<String> testClassNames, Collection<String> modulePaths) {
+        String goal = "surefire:test";
+        if (testClassNames != null) {
+            goal += " -DfailIfNoTests=false -Dtest=" + String.join(",", testClassNames);
+        }
+        if (modulePaths != null) {
+            goal += getTestedProjectList(modulePaths);
+        }
+        myTestsStart = System.currentTimeMillis();
         try {
-            runMavenGoal("surefire:test", projectPath, true);
+            runMavenGoal(goal, projectPath, true);
             FileDocumentManager.getInstance().saveAllDocuments();
         } catch (IOException e) {
             e.printStackTrace();
@@ -160,50 +191,120 @@ public class MavenUtils {
         }
     }
 
-    public int getFailures() throws MavenReportException {
-        List<File> reportDirs = getAllReportDirectories();
-        int failures = 0;
-        int testsRun = 0;
+    // reads only reports written by the last runTests() call
+    public int getFailures(String projectPath) {
+        List<File> reportDirs = getAllReportDirectories(projectPath);
+        SurefireReportReader reader = new SurefireReportReader(myTestsStart);
+        myTestOutcomes = reader.read(reportDirs);
+        System.out.println("Tests finished with " + reader.getFailuresCount() + " failures." + " Tests run: " + myTestOutcomes.size() +
+                ", errors: " + reader.getErrorsCount() + " (" + reader.getStatistics() + ")");
 
-        for (File dir : reportDirs) {
-            SurefireReportParser parser = new SurefireReportParser(Arrays.asList(dir), Locale.getDefault(), null);
-            List<ReportTestSuite> list = parser.parseXMLReportFiles();
+        return reader.getFailuresCount();
+    }
 
-            for (ReportTestSuite report : list) {
-                failures += report.getNumberOfFailures();
-                testsRun += report.getNumberOfTests();
-            }
+    // outcomes of tests read by the last getFailures() call
+    public TestOutcomes getTestOutcomes() {
+        return myTestOutcomes;
+    }
+
+    // returns the exit code of Maven, -1 if it was killed by timeout or cancelled
+    private int runMavenGoal(String goal, String projectPath, boolean toLog) throws IOException, InterruptedException {
+        String cmd = myMavenExecutable + " " + goal;
+        long start = System.currentTimeMillis();
+        ExecCommand execCommand = new ExecCommand(cmd, projectPath).setTimeout(myGoalTimeout);
+        if (!toLog) {
+            execCommand.setOutputListener(null);
+        }
+        myRunningCommand = execCommand;
+        int exitCode;
+        try {
+            exitCode = execCommand.run();
+        } finally {
+            myRunningCommand = null;
+        }
+        if (execCommand.isTimedOut() || execCommand.isCancelled()) {
+            exitCode = -1;
         }
-        System.out.println("Tests finished with " + failures + " failures." + " Tests run: " + testsRun);
+        long time = System.currentTimeMillis() - start;
+        myGoalTimes.add(goal + ": " + time + " ms");
+        myGoalsTime += time;
+        System.out.println("Maven goal '" + goal + "' finished in " + time + " ms with exit code " + exitCode);
+        if (exitCode != 0 && !toLog) {
+            // the output was not shown, the end of it usually explains the failure
+            System.out.println(execCommand.getOutput());
+        }
+        return exitCode;
+    }
 
-        return failures;
+    // a goal running longer is killed, 0 - no timeout
+    public void setGoalTimeout(long timeoutMillis) {
+        myGoalTimeout = timeoutMillis;
     }
 
-    private void runMavenGoal(String goal, String projectPath, boolean toLog) throws IOException, InterruptedException {
-        String cmd = "mvn " + goal;
-        ExecCommand execCommand = new ExecCommand(cmd, projectPath);
+    // stops the goal which is running now, can be called from any thread
+    public void cancelRunningGoal() {
+        ExecCommand command = myRunningCommand;
+        if (command != null) {
+            command.cancel();
+        }
     }
 
-    public List<File> findAllPomFiles(String projectPath) {
-        List<File> allFiles = getAllFilesRecursively(new File(projectPath));
-        List<File> pomFiles = new ArrayList<>();
+    // e.g. mvnd, which keeps a warm Maven daemon between goals instead of starting a new JVM for every goal
+    public void setMavenExecutable(String mavenExecutable) {
+        myMavenExecutable = mavenExecutable;
+    }
 
-        for (File f: allFiles) {
-            if (f.getName().endsWith("pom.xml"))
-                pomFiles.add(f);
+    public void printGoalTimes() {
+        System.out.println("Maven goals took " + myGoalsTime + " ms (" + myMavenExecutable + "):");
+        for (String goalTime : myGoalTimes) {
+            System.out.println("  " + goalTime);
         }
+    }
 
-        return pomFiles;
+    // modules they depend on are built in the same reactor too, otherwise they would be resolved from the local
+    // repository, which has whatever was installed last
+    private static String getProjectList(Collection<String> modulePaths) {
+        return getTestedProjectList(modulePaths) + " -am";
     }
 
-    public List<File> getAllReportDirectories() {
-        List<File> allFiles = getAllFilesRecursively(new File(myProjectPath.getPath()), false);
-        List<File> reportDirs = new ArrayList<>();
-        for (File dir: allFiles) {
-            if (dir.getName().endsWith("surefire-reports"))
-                reportDirs.add(dir);
+    // tests of modules the given ones depend on are not affected by the changes, so they are not run
+    private static String getTestedProjectList(Collection<String> modulePaths) {
+        return " -pl " + String.join(",", modulePaths) + " -amd";
+    }
+
+    // paths of modules (relative to the project root) owning the given files,
+    // null if a file belongs to the root module, so that the whole project has to be built
+    public List<String> findModules(String projectPath, Collection<String> filePaths) {
+        Path root = Paths.get(projectPath);
+        Set<String> modules = new TreeSet<>();
+        for (String filePath : filePaths) {
+            String relativePath = root.relativize(Paths.get(filePath)).toString().replace(File.separatorChar, '/');
+            String owner = "";
+            for (String modulePath : myModulePaths) {
+                if (modulePath.length() > owner.length() && relativePath.startsWith(modulePath + "/")) {
+                    owner = modulePath;
+                }
+            }
+            if (owner.isEmpty()) return null;
+            modules.add(owner);
         }
+        return new ArrayList<>(modules);
+    }
+
+    public List<File> findAllPomFiles(String projectPath) {
+        return scan(projectPath).getPomFiles();
+    }
+
+    public List<File> getAllReportDirectories(String projectPath) {
+        return scan(projectPath).getReportDirectories();
+    }
+
+    private ProjectScanner scan(String projectPath) {
+        myLastScan = new ProjectScanner().scan(projectPath);
+        return myLastScan;
+    }
 
-        return  reportDirs;
+    public String getScanStatistics() {
+        return myLastScan == null ? "Project was not scanned" : myLastScan.getStatistics();
     }
 }
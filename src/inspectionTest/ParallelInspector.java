@@ -0,0 +1,88 @@
+package inspectionTest;
+
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
+import com.intellij.openapi.util.Ref;
+import com.intellij.psi.PsiFile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Inspects files on a pool of worker threads. Every file is inspected in its own read action,
+// which is cancelled and restarted if a write action is requested in the meantime.
+public class ParallelInspector {
+    private final int myThreadsCount;
+    private final AtomicLong myBusyTime = new AtomicLong();
+
+    public ParallelInspector(int threadsCount) {
+        myThreadsCount = threadsCount;
+    }
+
+    // Results are merged in the order of files, so the output does not depend on the scheduling
+    public List<ProblemDescriptor> inspect(List<PsiFile> files, Function<PsiFile, List<ProblemDescriptor>> inspector) {
+        ExecutorService executor = Executors.newFixedThreadPool(myThreadsCount);
+        List<Future<List<ProblemDescriptor>>> futures = new ArrayList<>();
+        List<ProblemDescriptor> problems = new ArrayList<>();
+        long start = System.nanoTime();
+
+        try {
+            for (PsiFile file : files) {
+                futures.add(executor.submit(() -> {
+                    long fileStart = System.nanoTime();
+                    List<ProblemDescriptor> fileProblems = inspectInReadAction(file, inspector);
+                    myBusyTime.addAndGet(System.nanoTime() - fileStart);
+                    return fileProblems;
+                }));
+            }
+            for (Future<List<ProblemDescriptor>> future : futures) {
+                problems.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Inspection was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long wallTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long serialTime = TimeUnit.NANOSECONDS.toMillis(myBusyTime.get());
+        System.out.println("Inspected " + files.size() + " files in " + wallTime + " ms using " + myThreadsCount +
+                " threads (serial time " + serialTime + " ms, speedup " +
+                String.format("%.2f", wallTime == 0 ? 1.0 : (double) serialTime / wallTime) + "x)");
+
+        return problems;
+    }
+
+    static List<ProblemDescriptor> inspectInReadAction(PsiFile file, Function<PsiFile, List<ProblemDescriptor>> inspector) {
+        Ref<List<ProblemDescriptor>> result = Ref.create();
+
+        while (!ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(
+                () -> result.set(file.isValid() ? inspector.apply(file) : Collections.emptyList()))) {
+            waitForWriteActions();
+        }
+
+        return result.get();
+    }
+
+    // ProgressIndicatorUtils.yieldToPendingWriteActions() waits with invokeAndWait, but the EDT itself waits for
+    // the workers here, so the write action (which can only run on the EDT) is waited for without it
+    private static void waitForWriteActions() {
+        Application application = ApplicationManager.getApplication();
+        while (application.isWriteActionPending() || application.isWriteActionInProgress()) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Inspection was interrupted", e);
+            }
+        }
+    }
+}
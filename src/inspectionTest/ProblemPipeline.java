@@ -0,0 +1,109 @@
+package inspectionTest;
+
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.psi.PsiFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Streams problems of every inspected file through a bounded queue to the fix-applying stage,
+// so only a few files' problems are held in memory and fixes overlap with inspection of next files.
+// Producers inspect files on worker threads, fixes are applied on the calling thread.
+public class ProblemPipeline {
+    private static final List<ProblemDescriptor> END_OF_STREAM = new ArrayList<>();
+    // how often a producer waiting for space in the queue checks that the consumer is still there
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private final BlockingQueue<List<ProblemDescriptor>> myQueue;
+    private final int myThreadsCount;
+    private volatile Throwable myError;
+    // set when the consumer has finished or failed, nobody takes from the queue any more
+    private volatile boolean myConsumerStopped;
+    private int myFilesWithProblems;
+
+    public ProblemPipeline(int threadsCount) {
+        myThreadsCount = threadsCount;
+        myQueue = new ArrayBlockingQueue<>(threadsCount);
+    }
+
+    public void run(List<PsiFile> files, Function<PsiFile, List<ProblemDescriptor>> inspector, Consumer<List<ProblemDescriptor>> fixer) {
+        ExecutorService executor = Executors.newFixedThreadPool(myThreadsCount);
+        AtomicInteger nextFile = new AtomicInteger();
+        AtomicInteger activeProducers = new AtomicInteger(myThreadsCount);
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < myThreadsCount; i++) {
+            executor.execute(() -> {
+                try {
+                    int index;
+                    while (myError == null && !myConsumerStopped && (index = nextFile.getAndIncrement()) < files.size()) {
+                        List<ProblemDescriptor> problems = ParallelInspector.inspectInReadAction(files.get(index), inspector);
+                        if (!problems.isEmpty()) {
+                            put(problems);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // files left uninspected must not be taken for files without problems
+                    myError = e;
+                    Thread.currentThread().interrupt();
+                } catch (Throwable e) {
+                    myError = e;
+                } finally {
+                    if (activeProducers.decrementAndGet() == 0) {
+                        putEndOfStream();
+                    }
+                }
+            });
+        }
+
+        try {
+            List<ProblemDescriptor> problems;
+            while ((problems = myQueue.take()) != END_OF_STREAM) {
+                myFilesWithProblems++;
+                fixer.accept(problems);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Inspection was interrupted", e);
+        } finally {
+            // producers blocked on a full queue are released if the fixer has failed
+            myConsumerStopped = true;
+            myQueue.clear();
+            executor.shutdownNow();
+        }
+
+        if (myError != null) {
+            throw new RuntimeException(myError);
+        }
+        System.out.println("Inspected " + files.size() + " files (" + myFilesWithProblems + " with problems) in " +
+                (System.currentTimeMillis() - start) + " ms");
+    }
+
+    // returns without putting if the consumer has stopped
+    private void put(List<ProblemDescriptor> problems) throws InterruptedException {
+        while (!myConsumerStopped && !myQueue.offer(problems, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        }
+    }
+
+    // the consumer waits for the end of stream, so it is put even by an interrupted producer
+    private void putEndOfStream() {
+        boolean interrupted = Thread.interrupted();
+        while (true) {
+            try {
+                put(END_OF_STREAM);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+}
@@ -0,0 +1,127 @@
+package inspectionTest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Finds poms and surefire report directories of a project in one pass over its file tree.
+// Top-level directories are walked in parallel. VCS, IDE and node_modules directories are pruned,
+// build output directories are only looked into for surefire reports.
+public class ProjectScanner {
+    private static final Set<String> PRUNED = new HashSet<>(Arrays.asList(".git", ".svn", ".hg", ".idea", "node_modules"));
+    private static final String BUILD_OUTPUT = "target";
+    private static final String REPORTS = "surefire-reports";
+
+    private final Queue<File> myPomFiles = new ConcurrentLinkedQueue<>();
+    private final Queue<File> myReportDirectories = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger myDirectoriesCount = new AtomicInteger();
+    private final AtomicInteger myPrunedCount = new AtomicInteger();
+    private long myTime;
+
+    public ProjectScanner scan(String projectPath) {
+        long start = System.currentTimeMillis();
+        Path root = Paths.get(projectPath);
+        myDirectoriesCount.incrementAndGet();
+
+        List<Path> topLevelDirectories = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(root)) {
+            for (Path child : children) {
+                if (Files.isDirectory(child)) {
+                    topLevelDirectories.add(child);
+                } else {
+                    visitFile(child);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to scan " + projectPath + ": " + e.getMessage());
+        }
+
+        int threadsCount = Math.max(1, Math.min(topLevelDirectories.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threadsCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Path directory : topLevelDirectories) {
+                futures.add(executor.submit(() -> walk(directory)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            executor.shutdown();
+        }
+
+        myTime = System.currentTimeMillis() - start;
+        return this;
+    }
+
+    private void walk(Path directory) {
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    String name = dir.getFileName().toString();
+                    if (PRUNED.contains(name)) {
+                        myPrunedCount.incrementAndGet();
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    myDirectoriesCount.incrementAndGet();
+                    if (BUILD_OUTPUT.equals(name)) {
+                        Path reports = dir.resolve(REPORTS);
+                        if (Files.isDirectory(reports)) {
+                            myReportDirectories.add(reports.toFile());
+                        }
+                        myPrunedCount.incrementAndGet();
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    ProjectScanner.this.visitFile(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    System.err.println("Failed to scan " + file + ": " + e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Failed to scan " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private void visitFile(Path file) {
+        if (file.getFileName().toString().equals("pom.xml")) {
+            myPomFiles.add(file.toFile());
+        }
+    }
+
+    public List<File> getPomFiles() {
+        return sorted(myPomFiles);
+    }
+
+    public List<File> getReportDirectories() {
+        return sorted(myReportDirectories);
+    }
+
+    public String getStatistics() {
+        return "Project scanned in " + myTime + " ms: " + myDirectoriesCount.get() + " directories visited, " + myPrunedCount.get() +
+                " pruned, " + myPomFiles.size() + " poms, " + myReportDirectories.size() + " report directories";
+    }
+
+    // the order of traversal depends on threads
+    private static List<File> sorted(Collection<File> files) {
+        List<File> result = new ArrayList<>(files);
+        Collections.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,187 @@
+package inspectionTest;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.util.messages.MessageBusConnection;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Copy of the project where fixes are applied. Excluded paths are not copied at all.
+// In link mode source files are hard links to the originals and a file becomes a real copy right before it is written
+// through the VFS. Everything else can be rewritten in place by builds and tests, so it is copied: build output
+// directories as whole trees, with copy-on-write clones where the file system supports them.
+public class ProjectWorkspace {
+    private static final List<String> LINKED = Arrays.asList("**.java", "**.kt", "**.groovy", "**.scala");
+    private static final Set<String> OUTPUT_DIRECTORY_NAMES = new HashSet<>(Arrays.asList("target", "out", "build"));
+
+    private final Path mySource;
+    private final Path myTarget;
+    private final List<PathMatcher> myExcludes = new ArrayList<>();
+    private final List<PathMatcher> myLinked = new ArrayList<>();
+    private final Set<Path> myOutputDirectories = new HashSet<>();
+    private final boolean myLink;
+    private final Set<Path> myLinkedFiles = ConcurrentHashMap.newKeySet();
+    private MessageBusConnection myConnection;
+    private int myLinkedCount;
+    private int myCopiedCount;
+    private int myExcludedCount;
+    private int myOutputDirectoriesCount;
+    private long myTime;
+
+    // outputDirectories are class roots of modules, in addition to target, out and build directories
+    public ProjectWorkspace(String source, String target, List<String> excludes, boolean link, Collection<String> outputDirectories) {
+        mySource = Paths.get(source);
+        myTarget = Paths.get(target);
+        myLink = link;
+        for (String glob : excludes) {
+            myExcludes.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+        }
+        for (String glob : LINKED) {
+            myLinked.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+        }
+        for (String directory : outputDirectories) {
+            myOutputDirectories.add(Paths.get(directory).toAbsolutePath().normalize());
+        }
+    }
+
+    public void create() throws IOException {
+        long start = System.currentTimeMillis();
+        // leftovers of an interrupted run would be copied into the new workspace otherwise
+        FileUtils.deleteDirectory(myTarget.toFile());
+        Files.createDirectories(myTarget);
+
+        Files.walkFileTree(mySource, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(myTarget)) return FileVisitResult.SKIP_SUBTREE;
+                Path relative = mySource.relativize(dir);
+                if (matches(myExcludes, relative)) {
+                    myExcludedCount++;
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (myLink && isOutputDirectory(dir)) {
+                    copyTree(dir, myTarget.resolve(relative));
+                    myOutputDirectoriesCount++;
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(myTarget.resolve(relative));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path relative = mySource.relativize(file);
+                if (matches(myExcludes, relative)) {
+                    myExcludedCount++;
+                } else if (myLink && attrs.isRegularFile() && matches(myLinked, relative) && link(file, myTarget.resolve(relative))) {
+                    myLinkedFiles.add(myTarget.resolve(relative));
+                    myLinkedCount++;
+                } else {
+                    Files.copy(file, myTarget.resolve(relative), StandardCopyOption.COPY_ATTRIBUTES);
+                    myCopiedCount++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        myTime = System.currentTimeMillis() - start;
+        if (myLink) {
+            materializeBeforeWrites();
+        }
+    }
+
+    // replaces a hard link with a real copy, so that writing to it doesn't modify the original project
+    public void materialize(String path) {
+        Path file = Paths.get(path);
+        if (!myLinkedFiles.remove(file)) return;
+
+        try {
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to copy " + path + ": " + e.getMessage());
+        }
+    }
+
+    public String getStatistics() {
+        return "Workspace created in " + myTime + " ms: " + myLinkedCount + " files linked, " + myCopiedCount +
+                " copied, " + myOutputDirectoriesCount + " output directories copied, " + myExcludedCount + " excluded";
+    }
+
+    private boolean isOutputDirectory(Path dir) {
+        return !dir.equals(mySource) && (OUTPUT_DIRECTORY_NAMES.contains(dir.getFileName().toString()) ||
+                myOutputDirectories.contains(dir.toAbsolutePath().normalize()));
+    }
+
+    // clones files where the file system supports it (GNU cp falls back to a plain copy otherwise)
+    private static void copyTree(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        if (!SystemInfo.isWindows) {
+            try {
+                ExecCommand command = new ExecCommand("cp -R -p --reflink=auto \"" + source + "\" \"" + target + "\"", source.getParent().toString())
+                        .setOutputListener(null).setErrorListener(null);
+                if (command.run() == 0) return;
+            } catch (IOException e) {
+                // no GNU cp
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Copying of " + source + " was interrupted", e);
+            }
+            FileUtils.deleteDirectory(target.toFile());
+        }
+        FileUtils.copyDirectory(source.toFile(), target.toFile());
+    }
+
+    private void materializeBeforeWrites() {
+        myConnection = ApplicationManager.getApplication().getMessageBus().connect();
+        myConnection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void before(@NotNull List<VFileEvent> events) {
+                for (VFileEvent event : events) {
+                    if (event instanceof VFileContentChangeEvent) {
+                        materialize(event.getPath());
+                    }
+                }
+            }
+
+            @Override
+            public void after(@NotNull List<VFileEvent> events) {
+            }
+        });
+    }
+
+    public void dispose() {
+        if (myConnection != null) {
+            myConnection.disconnect();
+            myConnection = null;
+        }
+    }
+
+    private static boolean link(Path source, Path target) {
+        try {
+            Files.createLink(target, source);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            // file systems without hard links and links across devices
+            return false;
+        }
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path relative) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(relative)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,115 @@
+package inspectionTest;
+
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.codeInspection.QuickFix;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+
+import java.util.*;
+
+// Applies the first quick fix of every problem. Problems are grouped by file and every file is fixed
+// in a single write command, from the end of the file to its beginning, so that a fix does not shift
+// the ranges of problems which are not fixed yet.
+public class QuickFixApplier {
+    private final Project myProject;
+    private final Set<VirtualFile> myModifiedFiles = new LinkedHashSet<>();
+    private int myAppliedCount;
+    private int mySkippedCount;
+    private int myFailedCount;
+    private long myTime;
+
+    public QuickFixApplier(Project project) {
+        myProject = project;
+    }
+
+    public void apply(List<ProblemDescriptor> problems) {
+        long start = System.currentTimeMillis();
+        Map<PsiFile, List<ProblemDescriptor>> problemsByFile = new LinkedHashMap<>();
+
+        for (ProblemDescriptor problem : problems) {
+            PsiElement element = problem.getPsiElement();
+            if (getFix(problem) == null || element == null || !element.isValid()) {
+                mySkippedCount++;
+                continue;
+            }
+            problemsByFile.computeIfAbsent(element.getContainingFile(), file -> new ArrayList<>()).add(problem);
+        }
+
+        for (Map.Entry<PsiFile, List<ProblemDescriptor>> entry : problemsByFile.entrySet()) {
+            List<ProblemDescriptor> fileProblems = entry.getValue();
+            fileProblems.sort(Comparator.comparingInt(QuickFixApplier::getStartOffset).reversed());
+
+            int appliedBefore = myAppliedCount;
+            WriteCommandAction.runWriteCommandAction(myProject, () -> {
+                for (ProblemDescriptor problem : fileProblems) {
+                    applyFix(problem);
+                }
+            });
+
+            VirtualFile virtualFile = entry.getKey().getVirtualFile();
+            if (myAppliedCount > appliedBefore && virtualFile != null) {
+                myModifiedFiles.add(virtualFile);
+            }
+            // fixes can also change other files, e.g. usages of a renamed element
+            for (Document document : FileDocumentManager.getInstance().getUnsavedDocuments()) {
+                VirtualFile file = FileDocumentManager.getInstance().getFile(document);
+                if (file != null) myModifiedFiles.add(file);
+            }
+        }
+        myTime += System.currentTimeMillis() - start;
+    }
+
+    private void applyFix(ProblemDescriptor problem) {
+        QuickFix fix = getFix(problem);
+        PsiElement element = problem.getPsiElement();
+        // an earlier fix in the same file could have removed the element
+        if (element == null || !element.isValid()) {
+            mySkippedCount++;
+            return;
+        }
+
+        try {
+            System.out.println("applying " + fix.getName());
+            fix.applyFix(myProject, problem);
+            myAppliedCount++;
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (Throwable e) {
+            myFailedCount++;
+            System.out.println(fix.getName() + " could not be applied");
+        }
+
+        PsiDocumentManager documentManager = PsiDocumentManager.getInstance(myProject);
+        if (documentManager.hasUncommitedDocuments()) {
+            documentManager.commitAllDocuments();
+        }
+    }
+
+    private static QuickFix getFix(ProblemDescriptor problem) {
+        QuickFix[] fixes = problem.getFixes();
+        return fixes != null && fixes.length != 0 ? fixes[0] : null;
+    }
+
+    private static int getStartOffset(ProblemDescriptor problem) {
+        PsiElement element = problem.getStartElement();
+        TextRange range = element != null && element.isValid() ? element.getTextRange() : null;
+        return range != null ? range.getStartOffset() : -1;
+    }
+
+    public Set<VirtualFile> getModifiedFiles() {
+        return myModifiedFiles;
+    }
+
+    public void printStatistics() {
+        System.out.println("Fixes applied: " + myAppliedCount + ", skipped: " + mySkippedCount + ", failed: " + myFailedCount +
+                " (" + myModifiedFiles.size() + " files modified in " + myTime + " ms)");
+    }
+}
@@ -0,0 +1,146 @@
+package inspectionTest;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Reads outcomes of test cases from surefire XML reports with a streaming parser.
+// Reports written before the given time are left from earlier runs and are skipped.
+// Report directories are read in parallel, outcomes are merged in the order of directories.
+public class SurefireReportReader {
+    // file systems which store modification time in seconds
+    private static final long TIMESTAMP_PRECISION_MS = 1000;
+
+    private final long mySince;
+    private int myFailuresCount;
+    private int myErrorsCount;
+    private int myReportsCount;
+    private int myStaleReportsCount;
+    private long myTime;
+
+    // since - start time of the test run, 0 to read all reports
+    public SurefireReportReader(long since) {
+        mySince = since;
+    }
+
+    public TestOutcomes read(List<File> reportDirectories) {
+        long start = System.currentTimeMillis();
+        TestOutcomes outcomes = new TestOutcomes();
+        int threadsCount = Math.max(1, Math.min(reportDirectories.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threadsCount);
+        try {
+            List<Future<List<String[]>>> futures = new ArrayList<>();
+            for (File directory : reportDirectories) {
+                futures.add(executor.submit(() -> readDirectory(directory)));
+            }
+            for (Future<List<String[]>> future : futures) {
+                outcomes.addAll(future.get());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            executor.shutdown();
+        }
+        myTime = System.currentTimeMillis() - start;
+
+        return outcomes;
+    }
+
+    // records for TestOutcomes.addAll: test id, status name and duration in milliseconds
+    private List<String[]> readDirectory(File directory) {
+        List<String[]> records = new ArrayList<>();
+        File[] reports = directory.listFiles((dir, name) -> name.startsWith("TEST-") && name.endsWith(".xml"));
+        if (reports == null) return records;
+        // factories are not guaranteed to be thread-safe
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+
+        for (File report : reports) {
+            if (report.lastModified() < mySince - TIMESTAMP_PRECISION_MS) {
+                synchronized (this) {
+                    myStaleReportsCount++;
+                }
+                continue;
+            }
+            try {
+                readReport(factory, report, records);
+            } catch (IOException | XMLStreamException e) {
+                System.err.println("Failed to read " + report + ": " + e.getMessage());
+            }
+        }
+        return records;
+    }
+
+    private void readReport(XMLInputFactory factory, File report, List<String[]> records) throws IOException, XMLStreamException {
+        int failures = 0;
+        int errors = 0;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(report))) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                String testId = null;
+                long time = 0;
+                TestOutcomes.Status status = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if ("testcase".equals(name)) {
+                            testId = reader.getAttributeValue(null, "classname") + "#" + reader.getAttributeValue(null, "name");
+                            time = parseTime(reader.getAttributeValue(null, "time"));
+                            status = TestOutcomes.Status.PASSED;
+                        } else if (testId != null && "failure".equals(name)) {
+                            status = TestOutcomes.Status.FAILED;
+                            failures++;
+                        } else if (testId != null && "error".equals(name)) {
+                            status = TestOutcomes.Status.FAILED;
+                            errors++;
+                        } else if (testId != null && "skipped".equals(name)) {
+                            status = TestOutcomes.Status.SKIPPED;
+                        }
+                        // flaky failures and reruns of a test which finally passed don't change its status
+                    } else if (event == XMLStreamConstants.END_ELEMENT && "testcase".equals(reader.getLocalName())) {
+                        records.add(new String[]{testId, status.name(), String.valueOf(time)});
+                        testId = null;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        synchronized (this) {
+            myFailuresCount += failures;
+            myErrorsCount += errors;
+            myReportsCount++;
+        }
+    }
+
+    private static long parseTime(String time) {
+        if (time == null) return 0;
+        try {
+            // large times are formatted with grouping, e.g. 1,234.5
+            return (long) (Double.parseDouble(time.replace(",", "")) * 1000);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public int getFailuresCount() {
+        return myFailuresCount;
+    }
+
+    public int getErrorsCount() {
+        return myErrorsCount;
+    }
+
+    public String getStatistics() {
+        return myReportsCount + " reports read in " + myTime + " ms, " + myStaleReportsCount + " stale reports skipped";
+    }
+}
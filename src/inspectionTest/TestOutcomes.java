@@ -0,0 +1,85 @@
+package inspectionTest;
+
+import java.util.*;
+
+// Outcome and duration of every test of a run, tests are identified as "<class name>#<test name>"
+public class TestOutcomes {
+    // a test is significantly slower if it takes at least twice as long and at least this much longer
+    private static final long SLOWDOWN_THRESHOLD_MS = 100;
+
+    public enum Status {PASSED, FAILED, SKIPPED}
+
+    private final Map<String, Status> myStatuses = new LinkedHashMap<>();
+    private final Map<String, Long> myTimes = new HashMap<>();
+
+    public void add(String testId, Status status, long timeMillis) {
+        myStatuses.put(testId, status);
+        myTimes.put(testId, timeMillis);
+    }
+
+    // records of JUnitThread: test id, status name and duration in milliseconds
+    public void addAll(List<String[]> records) {
+        for (String[] record : records) {
+            add(record[0], Status.valueOf(record[1]), Long.parseLong(record[2]));
+        }
+    }
+
+    public int size() {
+        return myStatuses.size();
+    }
+
+    // compares this (baseline) run with the given one, tests which were not run again are ignored
+    public Diff diff(TestOutcomes after) {
+        Diff diff = new Diff();
+        for (Map.Entry<String, Status> entry : after.myStatuses.entrySet()) {
+            String testId = entry.getKey();
+            Status before = myStatuses.get(testId);
+            Status now = entry.getValue();
+            if (now == Status.FAILED && before != Status.FAILED) {
+                diff.myNewlyFailing.add(testId);
+            } else if (now == Status.PASSED && before == Status.FAILED) {
+                diff.myNewlyPassing.add(testId);
+            } else if (now == Status.PASSED && before == Status.PASSED) {
+                long beforeTime = myTimes.get(testId);
+                long afterTime = after.myTimes.get(testId);
+                if (afterTime >= 2 * beforeTime && afterTime - beforeTime >= SLOWDOWN_THRESHOLD_MS) {
+                    diff.mySlower.add(testId + " (" + beforeTime + " ms -> " + afterTime + " ms)");
+                }
+            }
+        }
+        return diff;
+    }
+
+    public static class Diff {
+        private final List<String> myNewlyFailing = new ArrayList<>();
+        private final List<String> myNewlyPassing = new ArrayList<>();
+        private final List<String> mySlower = new ArrayList<>();
+
+        public List<String> getNewlyFailing() {
+            return myNewlyFailing;
+        }
+
+        public Set<String> getNewlyFailingClasses() {
+            Set<String> classNames = new HashSet<>();
+            for (String testId : myNewlyFailing) {
+                int separator = testId.indexOf('#');
+                classNames.add(separator >= 0 ? testId.substring(0, separator) : testId);
+            }
+            return classNames;
+        }
+
+        public void print() {
+            System.out.println("Newly failing tests: " + myNewlyFailing.size() + ", newly passing: " + myNewlyPassing.size() +
+                    ", significantly slower: " + mySlower.size());
+            for (String testId : myNewlyFailing) {
+                System.out.println("  failing: " + testId);
+            }
+            for (String testId : myNewlyPassing) {
+                System.out.println("  passing: " + testId);
+            }
+            for (String test : mySlower) {
+                System.out.println("  slower: " + test);
+            }
+        }
+    }
+}
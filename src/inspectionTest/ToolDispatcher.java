@@ -0,0 +1,88 @@
+package inspectionTest;
+
+import com.intellij.codeInspection.ex.InspectionToolWrapper;
+import com.intellij.codeInspection.ex.Tools;
+import com.intellij.lang.Language;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.GeneratedSourcesFilter;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiBinaryFile;
+import com.intellij.psi.PsiFile;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Selects tools which can find something in a file by the language declared by every tool, as the IDE does before
+// running inspections in the editor, instead of running every tool on every file. Binary and generated files are not inspected.
+public class ToolDispatcher {
+    private final Project myProject;
+    private final List<InspectionToolWrapper> myWrappers = new ArrayList<>();
+    // null - any language
+    private final Map<String, Language> myLanguages = new HashMap<>();
+    // names of tools applicable to files with the given languages
+    private final Map<Set<Language>, Set<String>> myIndex = new ConcurrentHashMap<>();
+    private final AtomicLong myInvocations = new AtomicLong();
+    private final AtomicLong myAvoidedInvocations = new AtomicLong();
+    // a file can be dispatched more than once (e.g. batched and expensive tools separately), it is counted once
+    private final Set<String> mySkippedFiles = ConcurrentHashMap.newKeySet();
+
+    public ToolDispatcher(Project project, List<Tools> tools) {
+        myProject = project;
+        for (Tools tool : tools) {
+            InspectionToolWrapper wrapper = tool.getTool();
+            myWrappers.add(wrapper);
+            // a language which is not loaded is kept as unknown, such a tool is applicable to nothing
+            myLanguages.put(wrapper.getShortName(), wrapper.getLanguage() != null ?
+                    Language.findLanguageByID(wrapper.getLanguage()) : null);
+        }
+    }
+
+    // must be called in a read action
+    public List<Tools> select(PsiFile file, List<Tools> tools) {
+        myInvocations.addAndGet(tools.size());
+        VirtualFile virtualFile = file.getVirtualFile();
+        if (file instanceof PsiBinaryFile || file.getFileType().isBinary() ||
+                virtualFile != null && GeneratedSourcesFilter.isGeneratedSourceByAnyFilter(virtualFile, myProject)) {
+            mySkippedFiles.add(virtualFile != null ? virtualFile.getPath() : file.getName());
+            myAvoidedInvocations.addAndGet(tools.size());
+            return new ArrayList<>();
+        }
+
+        Set<String> applicable = myIndex.computeIfAbsent(new HashSet<>(file.getViewProvider().getLanguages()), this::findApplicableTools);
+        List<Tools> selected = new ArrayList<>();
+        for (Tools tool : tools) {
+            // tools which are not indexed are run as before
+            if (applicable.contains(tool.getShortName()) || !myLanguages.containsKey(tool.getShortName())) {
+                selected.add(tool);
+            }
+        }
+        myAvoidedInvocations.addAndGet(tools.size() - selected.size());
+        return selected;
+    }
+
+    private Set<String> findApplicableTools(Set<Language> fileLanguages) {
+        Set<String> tools = new HashSet<>();
+        for (InspectionToolWrapper wrapper : myWrappers) {
+            String name = wrapper.getShortName();
+            if (wrapper.getLanguage() == null) {
+                tools.add(name);
+                continue;
+            }
+            Language language = myLanguages.get(name);
+            if (language == null) continue;
+            for (Language fileLanguage : fileLanguages) {
+                if (fileLanguage.is(language) || wrapper.applyToDialects() && fileLanguage.isKindOf(language)) {
+                    tools.add(name);
+                    break;
+                }
+            }
+        }
+        return tools;
+    }
+
+    public String getStatistics() {
+        return "Tool dispatch: " + myAvoidedInvocations.get() + " of " + myInvocations.get() + " tool invocations avoided, " +
+                mySkippedFiles.size() + " binary or generated files skipped, " + myIndex.size() + " language combinations indexed";
+    }
+}
@@ -0,0 +1,42 @@
+package inspectionTest;
+
+import com.intellij.codeInspection.ex.InspectionToolWrapper;
+import com.intellij.codeInspection.ex.ScopeToolState;
+import com.intellij.codeInspection.ex.Tools;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.WriteExternalException;
+import org.jdom.Element;
+
+// Textual representation of the profile settings of a tool: enablement, and scope, level and options of every state
+public class ToolSettings {
+    private ToolSettings() {
+    }
+
+    public static String describe(Tools tools) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(tools.getShortName()).append(tools.isEnabled() ? ":enabled" : ":disabled");
+
+        for (ScopeToolState state : tools.getTools()) {
+            builder.append(';').append(state.getScopeName())
+                    .append(':').append(state.getLevel().getName())
+                    .append(':').append(state.isEnabled())
+                    .append(':').append(describeOptions(state.getTool()));
+        }
+
+        return builder.toString();
+    }
+
+    public static int hash(Tools tools) {
+        return describe(tools).hashCode();
+    }
+
+    private static String describeOptions(InspectionToolWrapper toolWrapper) {
+        Element element = new Element("options");
+        try {
+            toolWrapper.getTool().writeSettings(element);
+        } catch (WriteExternalException e) {
+            return "";
+        }
+        return JDOMUtil.writeElement(element);
+    }
+}